@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.SeekableInput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Walks the blocks of an Avro data file by reading only their headers: the record count and the
+ * byte size of each block. Block contents are neither read nor decompressed.
+ */
+class AvroBlocks {
+    /** Upper bound of the header size, two zig-zag varint longs. */
+    private static final int MAX_HEADER_SIZE = 20;
+
+    private final SeekableInput in;
+
+    private final long length;
+
+    private final byte[] buffer = new byte[MAX_HEADER_SIZE];
+
+    AvroBlocks(SeekableInput in) throws IOException {
+        this.in = in;
+        this.length = in.length();
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * Reads the header of the block starting at the given offset.
+     *
+     * @param offset The offset of the block, right after a sync marker
+     * @return The block, or null if the offset is at the end of the file
+     * @throws IOException
+     */
+    Block read(long offset) throws IOException {
+        if (offset >= length) {
+            return null;
+        }
+        in.seek(offset);
+        int available = (int) Math.min(MAX_HEADER_SIZE, length - offset);
+        int read = 0;
+        while (read < available) {
+            int n = in.read(buffer, read, available - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        int[] pos = new int[] {0};
+        long count = readLong(pos, read);
+        long size = readLong(pos, read);
+        if (count < 0 || size < 0) {
+            throw new AvroRuntimeException("Invalid block header at offset " + offset);
+        }
+        return new Block(offset, count, offset + pos[0] + size + DataFileConstants.SYNC_SIZE);
+    }
+
+    /** Reads the headers of all blocks from the given block offset to the end of the file. */
+    List<Block> scan(long offset) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        for (Block block = read(offset); block != null; block = read(block.next)) {
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private long readLong(int[] pos, int limit) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (pos[0] >= limit || shift > 63) {
+                throw new AvroRuntimeException("Truncated or invalid block header");
+            }
+            b = buffer[pos[0]++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Position and record count of one data block. */
+    static class Block {
+        final long offset;
+
+        final long count;
+
+        final long next;
+
+        Block(long offset, long count, long next) {
+            this.offset = offset;
+            this.count = count;
+            this.next = next;
+        }
+    }
+}
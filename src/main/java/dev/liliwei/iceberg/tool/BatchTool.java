@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Runs many tool command lines in one JVM, so that scripts pay the JVM startup, class loading and
+ * JIT warm-up once instead of once per file.
+ *
+ * <p>Every command runs on a bounded pool with a new instance of its tool, since tools may keep
+ * state in fields, and with its own stdout and stderr files. The invocations share the Hadoop
+ * configuration and filesystems, and a cache of parsed metadata files, so that a metadata.json
+ * named by many commands is read once.
+ */
+public class BatchTool implements Tool {
+    private final Function<String, Tool> tools;
+
+    /** @param tools Returns a new instance of the tool with the given name, or null. */
+    BatchTool(Function<String, Tool> tools) {
+        this.tools = tools;
+    }
+
+    @Override
+    public String getName() {
+        return "batch";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Runs tool command lines concurrently in one JVM, each into its own files.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of commands run concurrently.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+        OptionSpec<Integer> cacheOption =
+                optionParser
+                        .accepts("metadata-cache-size", "Number of parsed metadata files kept.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(64);
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 2 || threadsOption.value(optionSet) <= 0) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        List<Command> commands = new ArrayList<>();
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                Util.fileOrStdin(nargs.get(0), stdin), StandardCharsets.UTF_8))) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber += 1;
+                List<String> words;
+                try {
+                    words = split(line);
+                } catch (IllegalArgumentException e) {
+                    err.println("Line " + lineNumber + ": " + e.getMessage());
+                    return 1;
+                }
+                if (words.isEmpty() || words.get(0).startsWith("#")) {
+                    continue;
+                }
+                Tool tool = tools.apply(words.get(0));
+                if (tool == null || tool instanceof BatchTool) {
+                    err.println("Line " + lineNumber + ": unknown tool " + words.get(0));
+                    return 1;
+                }
+                commands.add(
+                        new Command(
+                                commands.size(),
+                                lineNumber,
+                                tool,
+                                words.subList(1, words.size())));
+            }
+        }
+
+        IcebergMetadata.enableCache(cacheOption.value(optionSet));
+        Path outputDir = new Path(nargs.get(1));
+        FileSystem fs = outputDir.getFileSystem(Util.conf());
+        fs.mkdirs(outputDir);
+
+        JsonGenerator generator = Util.jsonLines(out);
+        long start = System.nanoTime();
+        int failed = 0;
+        ExecutorService pool = Util.newPool(threadsOption.value(optionSet), "batch");
+        try {
+            List<Future<Command>> futures = new ArrayList<>();
+            for (Command command : commands) {
+                futures.add(pool.submit(() -> command.run(fs, outputDir)));
+            }
+            // results are written in command order, each as soon as it and its predecessors end
+            for (Future<Command> future : futures) {
+                Command command = future.get();
+                generator.writeStartObject();
+                generator.writeNumberField("line", command.lineNumber);
+                generator.writeStringField("tool", command.tool.getName());
+                generator.writeNumberField("exit_code", command.exitCode);
+                generator.writeNumberField("ms", command.elapsedMs);
+                generator.writeStringField("output", command.output.toString());
+                if (command.error != null) {
+                    generator.writeStringField("error", command.error);
+                }
+                generator.writeEndObject();
+                generator.flush();
+                if (command.exitCode != 0) {
+                    failed += 1;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Ran %d commands in %d ms, %d failed",
+                        commands.size(), (System.nanoTime() - start) / 1_000_000, failed));
+        return failed == 0 ? 0 : 1;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "batch [--threads=N] [--metadata-cache-size=N] commands-file output-dir");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("A dash ('-') can be given as the commands file to use stdin");
+        ps.println(
+                "Each line holds a tool name and its arguments, quoted as in a shell; lines"
+                        + " starting with # are skipped.");
+        ps.println(
+                "The stdout and stderr of the Nth command go to NNNNN-tool.out and"
+                        + " NNNNN-tool.err in output-dir.");
+    }
+
+    /**
+     * Splits a command line into words at unquoted whitespace. Single quotes keep their content
+     * as is; within double quotes and unquoted, a backslash escapes the next character.
+     */
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length()) {
+                word.append(line.charAt(++i));
+                inWord = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("unterminated " + quote + " quote");
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** One command line and, once run, its outcome. */
+    private static class Command {
+        private final int index;
+
+        private final int lineNumber;
+
+        private final Tool tool;
+
+        private final List<String> args;
+
+        private Path output;
+
+        private int exitCode;
+
+        private String error;
+
+        private long elapsedMs;
+
+        Command(int index, int lineNumber, Tool tool, List<String> args) {
+            this.index = index;
+            this.lineNumber = lineNumber;
+            this.tool = tool;
+            this.args = args;
+        }
+
+        Command run(FileSystem fs, Path outputDir) throws IOException {
+            String name = String.format("%05d-%s", index, tool.getName());
+            this.output = new Path(outputDir, name + ".out");
+            long start = System.nanoTime();
+            try (PrintStream out = open(fs, output);
+                    PrintStream err = open(fs, new Path(outputDir, name + ".err"))) {
+                try {
+                    exitCode = tool.run(new ByteArrayInputStream(new byte[0]), out, err, args);
+                } catch (Exception e) {
+                    e.printStackTrace(err);
+                    exitCode = 1;
+                    error = e.toString();
+                }
+            }
+            elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            return this;
+        }
+
+        private static PrintStream open(FileSystem fs, Path file) throws IOException {
+            return new PrintStream(
+                    new BufferedOutputStream(fs.create(file, true)),
+                    false,
+                    StandardCharsets.UTF_8.name());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts Avro binary encoded datums by an Avro binary encoded key within a fixed memory budget.
+ * Keys are compared with {@link BinaryData#compare} and never decoded.
+ *
+ * <p>Every thread adding items uses its own {@link Writer}, so threads buffer and sort in
+ * parallel. Half of the budget is shared by the writers; a full writer buffer is sorted and
+ * spilled to a temporary run file. The other half holds the sorted buffers of finished writers;
+ * once it is exhausted they are merged into a single run file, so that many small writers do not
+ * leave one tiny run each. {@link #forEachSorted} merges the runs in passes over a bounded number
+ * of files, so that the open files and their buffers stay bounded however many runs there are.
+ */
+class BinaryRecordSorter implements Closeable {
+    /** Estimated heap overhead of one buffered item besides its bytes. */
+    private static final int ITEM_OVERHEAD = 32;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private static final int DEFAULT_MERGE_FAN_IN = 64;
+
+    /** Receives the datums in key order. */
+    interface DatumConsumer {
+        void accept(byte[] item, int offset, int length) throws IOException;
+    }
+
+    private final Schema keySchema;
+
+    private final long writerBudget;
+
+    private final long retainedBudget;
+
+    private final File tmpDir;
+
+    private final int mergeFanIn;
+
+    private final Comparator<byte[]> comparator;
+
+    private final List<File> runs = new ArrayList<>();
+
+    private final List<List<byte[]>> memoryRuns = new ArrayList<>();
+
+    private long retainedBytes = 0;
+
+    private int spilledRuns = 0;
+
+    /**
+     * @param keySchema The schema of the keys
+     * @param maxMemoryBytes The memory budget shared by all writers
+     * @param writers The number of writers that will add items concurrently
+     * @param tmpDir The directory of spilled runs, or null for the default temporary directory
+     */
+    BinaryRecordSorter(Schema keySchema, long maxMemoryBytes, int writers, File tmpDir) {
+        this(keySchema, maxMemoryBytes, writers, tmpDir, DEFAULT_MERGE_FAN_IN);
+    }
+
+    /**
+     * @param keySchema The schema of the keys
+     * @param maxMemoryBytes The memory budget shared by all writers
+     * @param writers The number of writers that will add items concurrently
+     * @param tmpDir The directory of spilled runs, or null for the default temporary directory
+     * @param mergeFanIn The maximum number of run files merged at once
+     */
+    BinaryRecordSorter(
+            Schema keySchema, long maxMemoryBytes, int writers, File tmpDir, int mergeFanIn) {
+        this.keySchema = keySchema;
+        this.writerBudget = Math.max(1 << 20, maxMemoryBytes / 2 / Math.max(1, writers));
+        this.retainedBudget = maxMemoryBytes / 2;
+        this.tmpDir = tmpDir;
+        this.mergeFanIn = Math.max(2, mergeFanIn);
+        // items are a 4 byte key length, the key and the datum
+        this.comparator = (a, b) -> BinaryData.compare(a, 4, b, 4, this.keySchema);
+    }
+
+    /** Returns a new writer, to be used by a single thread. */
+    Writer writer() {
+        return new Writer();
+    }
+
+    /** Number of runs that were spilled to disk. */
+    synchronized int spilledRuns() {
+        return spilledRuns;
+    }
+
+    private synchronized void addRun(List<byte[]> items, long bytes, boolean spill)
+            throws IOException {
+        if (spill) {
+            runs.add(writeRun(Collections.singletonList(new MemoryCursor(items))));
+            spilledRuns += 1;
+            return;
+        }
+        memoryRuns.add(items);
+        retainedBytes += bytes;
+        if (retainedBytes > retainedBudget) {
+            // one run of the size of the retained budget instead of one per finished writer
+            List<Cursor> cursors = new ArrayList<>();
+            for (List<byte[]> retained : memoryRuns) {
+                cursors.add(new MemoryCursor(retained));
+            }
+            runs.add(writeRun(cursors));
+            spilledRuns += 1;
+            memoryRuns.clear();
+            retainedBytes = 0;
+        }
+    }
+
+    /** Merges the cursors into a new run file and closes them. */
+    private File writeRun(List<Cursor> cursors) throws IOException {
+        File run = File.createTempFile("entries-", ".run", tmpDir);
+        run.deleteOnExit();
+        try (DataOutputStream out =
+                new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE))) {
+            merge(
+                    cursors,
+                    item -> {
+                        out.writeInt(item.length);
+                        out.write(item);
+                    });
+        } catch (IOException | RuntimeException e) {
+            delete(run);
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * Passes every datum to the consumer in key order. Must be called after all writers were
+     * finished.
+     *
+     * @param consumer The receiver of the sorted datums
+     * @throws IOException
+     */
+    synchronized void forEachSorted(DatumConsumer consumer) throws IOException {
+        // intermediate passes merge the oldest runs until a single pass can take the rest
+        while (runs.size() > mergeFanIn) {
+            List<File> group = new ArrayList<>(runs.subList(0, mergeFanIn));
+            runs.subList(0, mergeFanIn).clear();
+            runs.add(writeRun(open(group)));
+            for (File run : group) {
+                delete(run);
+            }
+        }
+        List<Cursor> cursors = new ArrayList<>();
+        for (List<byte[]> items : memoryRuns) {
+            cursors.add(new MemoryCursor(items));
+        }
+        cursors.addAll(open(runs));
+        merge(
+                cursors,
+                item -> {
+                    int keyLength =
+                            ((item[0] & 0xFF) << 24)
+                                    | ((item[1] & 0xFF) << 16)
+                                    | ((item[2] & 0xFF) << 8)
+                                    | (item[3] & 0xFF);
+                    consumer.accept(item, 4 + keyLength, item.length - 4 - keyLength);
+                });
+    }
+
+    private static List<Cursor> open(List<File> files) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (File file : files) {
+                cursors.add(new RunCursor(file));
+            }
+        } catch (IOException e) {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    /** Passes the items of the sorted cursors to the consumer in key order and closes them. */
+    private void merge(List<Cursor> cursors, ItemConsumer consumer) throws IOException {
+        PriorityQueue<Cursor> queue =
+                new PriorityQueue<>((a, b) -> comparator.compare(a.item, b.item));
+        try {
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                consumer.accept(cursor.item);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static void delete(File run) {
+        if (!run.delete()) {
+            run.deleteOnExit();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (File run : runs) {
+            delete(run);
+        }
+        runs.clear();
+        memoryRuns.clear();
+        retainedBytes = 0;
+    }
+
+    /** Buffers the items of one thread. */
+    class Writer {
+        private List<byte[]> items = new ArrayList<>();
+
+        private long bytes = 0;
+
+        /**
+         * Adds a datum.
+         *
+         * @param key The encoded key
+         * @param keyLength The length of the key
+         * @param datum The encoded datum
+         * @param datumLength The length of the datum
+         * @throws IOException
+         */
+        void add(byte[] key, int keyLength, byte[] datum, int datumLength) throws IOException {
+            byte[] item = new byte[4 + keyLength + datumLength];
+            item[0] = (byte) (keyLength >>> 24);
+            item[1] = (byte) (keyLength >>> 16);
+            item[2] = (byte) (keyLength >>> 8);
+            item[3] = (byte) keyLength;
+            System.arraycopy(key, 0, item, 4, keyLength);
+            System.arraycopy(datum, 0, item, 4 + keyLength, datumLength);
+            items.add(item);
+            bytes += item.length + ITEM_OVERHEAD;
+            if (bytes >= writerBudget) {
+                items.sort(comparator);
+                addRun(items, bytes, true);
+                items = new ArrayList<>();
+                bytes = 0;
+            }
+        }
+
+        /** Sorts the buffered items and hands them over to the sorter. */
+        void finish() throws IOException {
+            if (!items.isEmpty()) {
+                items.sort(comparator);
+                addRun(items, bytes, false);
+            }
+            items = null;
+        }
+    }
+
+    /** Receives whole items, the key length, key and datum. */
+    private interface ItemConsumer {
+        void accept(byte[] item) throws IOException;
+    }
+
+    private abstract static class Cursor implements Closeable {
+        byte[] item;
+
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {}
+    }
+
+    private static class MemoryCursor extends Cursor {
+        private final List<byte[]> items;
+
+        private int next = 0;
+
+        MemoryCursor(List<byte[]> items) {
+            this.items = items;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == items.size()) {
+                return false;
+            }
+            item = items.get(next++);
+            return true;
+        }
+    }
+
+    private static class RunCursor extends Cursor {
+        private final DataInputStream in;
+
+        RunCursor(File run) throws IOException {
+            this.in =
+                    new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            item = new byte[length];
+            in.readFully(item);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
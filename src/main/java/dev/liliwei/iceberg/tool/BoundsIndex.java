@@ -0,0 +1,557 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.iceberg.expressions.Literal;
+import org.apache.iceberg.types.Conversions;
+import org.apache.iceberg.types.Type;
+import org.apache.iceberg.types.Types;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * On-disk index of the column bounds of the live data files in a manifest.
+ *
+ * <p>Each manifest is indexed into its own immutable segment file, so a snapshot index is just the
+ * list of segments of its manifests and rebuilding after a commit only indexes the new manifests.
+ * Bounds are stored as order-preserving byte keys (big-endian with flipped sign bits for numbers),
+ * so lookups are unsigned byte comparisons against the memory-mapped file whatever the column type.
+ *
+ * <p>Segment layout, big-endian:
+ *
+ * <pre>
+ * int magic, int fileCount, int columnCount, long filesOffset
+ * columnCount x { int fieldId, short typeLength, type, long blockOffset }
+ * column block: int entryCount, int unboundedCount, int[unboundedCount] fileIndex,
+ *               int[entryCount] entryOffset, int[entryCount] prefixMaxEntry,
+ *               entryCount x { short lowerLength, lower, short upperLength, upper, int fileIndex }
+ * file table:   int[fileCount] fileOffset,
+ *               fileCount x { long recordCount, long fileSize, int pathLength, path }
+ * </pre>
+ *
+ * Entries are sorted by lower bound and prefixMaxEntry[i] is the entry with the greatest upper
+ * bound among entries 0..i, which lets a range lookup binary search both ends of its candidates.
+ */
+public class BoundsIndex {
+    static final int MAGIC = 0x49424931;
+
+    static final String SEGMENT_DIR = "segments";
+
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    private BoundsIndex() {}
+
+    /** Returns the segment file name of a manifest. */
+    static String segmentName(String manifestPath) {
+        return Hashing.murmur3_128().hashString(manifestPath, StandardCharsets.UTF_8).toString()
+                + ".seg";
+    }
+
+    static Type.PrimitiveType type(String typeName) {
+        return Types.fromPrimitiveString(typeName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Encodes a bound value into a byte key whose unsigned lexicographic order matches the value
+     * order of the type.
+     */
+    static byte[] encode(Type.PrimitiveType type, Object value) {
+        switch (type.typeId()) {
+            case BOOLEAN:
+                return new byte[] {(byte) (((Boolean) value) ? 1 : 0)};
+            case INTEGER:
+            case DATE:
+                return ByteBuffer.allocate(4)
+                        .putInt(((Number) value).intValue() ^ Integer.MIN_VALUE)
+                        .array();
+            case LONG:
+            case TIME:
+            case TIMESTAMP:
+                return ByteBuffer.allocate(8)
+                        .putLong(((Number) value).longValue() ^ Long.MIN_VALUE)
+                        .array();
+            case FLOAT:
+                int intBits = Float.floatToIntBits(((Number) value).floatValue());
+                intBits = intBits < 0 ? ~intBits : intBits ^ Integer.MIN_VALUE;
+                return ByteBuffer.allocate(4).putInt(intBits).array();
+            case DOUBLE:
+                long longBits = Double.doubleToLongBits(((Number) value).doubleValue());
+                longBits = longBits < 0 ? ~longBits : longBits ^ Long.MIN_VALUE;
+                return ByteBuffer.allocate(8).putLong(longBits).array();
+            case STRING:
+                return value.toString().getBytes(StandardCharsets.UTF_8);
+            case UUID:
+                UUID uuid = (UUID) value;
+                return ByteBuffer.allocate(16)
+                        .putLong(uuid.getMostSignificantBits())
+                        .putLong(uuid.getLeastSignificantBits())
+                        .array();
+            case FIXED:
+            case BINARY:
+                ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            case DECIMAL:
+                // sign-extend the unscaled value to 128 bits, enough for precision 38
+                byte[] unscaled = ((BigDecimal) value).unscaledValue().toByteArray();
+                byte[] key = new byte[16];
+                byte pad = (byte) (unscaled[0] < 0 ? 0xFF : 0);
+                for (int i = 0; i < 16 - unscaled.length; i++) {
+                    key[i] = pad;
+                }
+                System.arraycopy(unscaled, 0, key, 16 - unscaled.length, unscaled.length);
+                key[0] ^= (byte) 0x80;
+                return key;
+            default:
+                throw new IllegalArgumentException("Cannot index bounds of type " + type);
+        }
+    }
+
+    /** Parses a lookup value given on the command line into the Java value of the type. */
+    static Object parse(Type.PrimitiveType type, String value) {
+        switch (type.typeId()) {
+            case BOOLEAN:
+                if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                    throw new IllegalArgumentException("Not a boolean: '" + value + "'");
+                }
+                return Boolean.parseBoolean(value);
+            case INTEGER:
+                return Integer.parseInt(value);
+            case LONG:
+                return Long.parseLong(value);
+            case FLOAT:
+                return Float.parseFloat(value);
+            case DOUBLE:
+                return Double.parseDouble(value);
+            case STRING:
+                return value;
+            case DECIMAL:
+                return new BigDecimal(value)
+                        .setScale(((Types.DecimalType) type).scale(), RoundingMode.HALF_UP);
+            case FIXED:
+            case BINARY:
+                // every byte as two hex digits, leading zero bytes included
+                return ByteBuffer.wrap(
+                        BaseEncoding.base16().decode(value.toUpperCase(Locale.ROOT)));
+            default:
+                // dates, times, timestamps and uuids use the Iceberg literal syntax
+                Literal<Object> literal = Literal.of(value).to(type);
+                if (literal == null) {
+                    throw new IllegalArgumentException(
+                            "Cannot convert '" + value + "' to " + type);
+                }
+                return literal.value();
+        }
+    }
+
+    /**
+     * Builds the segment of a manifest and atomically writes it into the index directory.
+     *
+     * @param manifestPath The manifest to index
+     * @param fieldTypes Field id to type name of the columns to index
+     * @param indexDir The index directory
+     * @throws IOException
+     */
+    static void writeSegment(String manifestPath, Map<Integer, String> fieldTypes, File indexDir)
+            throws IOException {
+        Map<Integer, ColumnBuilder> columns = new LinkedHashMap<>();
+        for (Map.Entry<Integer, String> field : fieldTypes.entrySet()) {
+            columns.put(
+                    field.getKey(), new ColumnBuilder(field.getValue(), type(field.getValue())));
+        }
+
+        ByteArrayOutputStream files = new ByteArrayOutputStream();
+        DataOutputStream filesOut = new DataOutputStream(files);
+        List<Integer> fileOffsets = new ArrayList<>();
+        try (DataFileStream<GenericRecord> stream =
+                ManifestEntries.openProjected(
+                        manifestPath,
+                        "content",
+                        "file_path",
+                        "record_count",
+                        "file_size_in_bytes",
+                        "value_counts",
+                        "null_value_counts",
+                        "lower_bounds",
+                        "upper_bounds")) {
+            GenericRecord entry = null;
+            while (stream.hasNext()) {
+                entry = stream.next(entry);
+                GenericRecord dataFile = ManifestEntries.dataFile(entry);
+                if (!ManifestEntries.isLive(entry)
+                        || ManifestEntries.content(dataFile) != ManifestEntries.CONTENT_DATA) {
+                    continue;
+                }
+                int fileIndex = fileOffsets.size();
+                fileOffsets.add(filesOut.size());
+                byte[] path =
+                        ManifestEntries.filePath(dataFile).getBytes(StandardCharsets.UTF_8);
+                filesOut.writeLong(ManifestEntries.recordCount(dataFile));
+                filesOut.writeLong(ManifestEntries.fileSizeInBytes(dataFile));
+                filesOut.writeInt(path.length);
+                filesOut.write(path);
+
+                Map<Integer, ByteBuffer> lowers =
+                        ManifestEntries.metricMap(dataFile, "lower_bounds");
+                Map<Integer, ByteBuffer> uppers =
+                        ManifestEntries.metricMap(dataFile, "upper_bounds");
+                Map<Integer, Long> valueCounts =
+                        ManifestEntries.metricMap(dataFile, "value_counts");
+                Map<Integer, Long> nullCounts =
+                        ManifestEntries.metricMap(dataFile, "null_value_counts");
+                for (Map.Entry<Integer, ColumnBuilder> column : columns.entrySet()) {
+                    int fieldId = column.getKey();
+                    Long values = valueCounts.get(fieldId);
+                    if (values != null && values.equals(nullCounts.get(fieldId))) {
+                        continue; // only nulls, no value can match
+                    }
+                    column.getValue()
+                            .add(fileIndex, lowers.get(fieldId), uppers.get(fieldId));
+                }
+            }
+        }
+
+        // header, column directory, column blocks, file table
+        List<byte[]> blocks = new ArrayList<>();
+        int headerSize = 4 + 4 + 4 + 8;
+        for (ColumnBuilder column : columns.values()) {
+            blocks.add(column.build());
+            headerSize += 4 + 2 + column.typeName.getBytes(StandardCharsets.UTF_8).length + 8;
+        }
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(segment);
+        long offset = headerSize;
+        for (byte[] block : blocks) {
+            offset += block.length;
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(fileOffsets.size());
+        out.writeInt(columns.size());
+        out.writeLong(offset);
+        offset = headerSize;
+        int i = 0;
+        for (Map.Entry<Integer, ColumnBuilder> column : columns.entrySet()) {
+            byte[] typeName = column.getValue().typeName.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(column.getKey());
+            out.writeShort(typeName.length);
+            out.write(typeName);
+            out.writeLong(offset);
+            offset += blocks.get(i++).length;
+        }
+        for (byte[] block : blocks) {
+            out.write(block);
+        }
+        for (int fileOffset : fileOffsets) {
+            out.writeInt(fileOffset);
+        }
+        files.writeTo(out);
+        out.flush();
+
+        File segmentDir = new File(indexDir, SEGMENT_DIR);
+        if (!segmentDir.isDirectory() && !segmentDir.mkdirs()) {
+            throw new IOException("Cannot create " + segmentDir);
+        }
+        File target = new File(segmentDir, segmentName(manifestPath));
+        File tmp = File.createTempFile(target.getName(), ".tmp", segmentDir);
+        Files.write(tmp.toPath(), segment.toByteArray());
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Collects the bounds of one column of a segment. */
+    private static class ColumnBuilder {
+        private final String typeName;
+
+        private final Type.PrimitiveType type;
+
+        private final List<byte[][]> entries = new ArrayList<>();
+
+        private final List<Integer> fileIndexes = new ArrayList<>();
+
+        private final List<Integer> unbounded = new ArrayList<>();
+
+        ColumnBuilder(String typeName, Type.PrimitiveType type) {
+            this.typeName = typeName;
+            this.type = type;
+        }
+
+        void add(int fileIndex, ByteBuffer lower, ByteBuffer upper) {
+            if (lower == null || upper == null) {
+                unbounded.add(fileIndex);
+                return;
+            }
+            byte[] lowerKey = encode(type, Conversions.fromByteBuffer(type, lower));
+            byte[] upperKey = encode(type, Conversions.fromByteBuffer(type, upper));
+            if (lowerKey.length > MAX_KEY_LENGTH || upperKey.length > MAX_KEY_LENGTH) {
+                unbounded.add(fileIndex);
+                return;
+            }
+            entries.add(new byte[][] {lowerKey, upperKey});
+            fileIndexes.add(fileIndex);
+        }
+
+        byte[] build() throws IOException {
+            Integer[] order = new Integer[entries.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(
+                    order, Comparator.comparing(i -> entries.get(i)[0], BoundsIndex::compare));
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            DataOutputStream dataOut = new DataOutputStream(data);
+            int[] offsets = new int[order.length];
+            int[] prefixMax = new int[order.length];
+            int headerSize = 4 + 4 + 4 * unbounded.size() + 8 * order.length;
+            for (int i = 0; i < order.length; i++) {
+                byte[][] entry = entries.get(order[i]);
+                offsets[i] = headerSize + dataOut.size();
+                dataOut.writeShort(entry[0].length);
+                dataOut.write(entry[0]);
+                dataOut.writeShort(entry[1].length);
+                dataOut.write(entry[1]);
+                dataOut.writeInt(fileIndexes.get(order[i]));
+                prefixMax[i] =
+                        i > 0 && compare(entries.get(order[prefixMax[i - 1]])[1], entry[1]) >= 0
+                                ? prefixMax[i - 1]
+                                : i;
+            }
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(block);
+            out.writeInt(order.length);
+            out.writeInt(unbounded.size());
+            for (int fileIndex : unbounded) {
+                out.writeInt(fileIndex);
+            }
+            for (int entryOffset : offsets) {
+                out.writeInt(entryOffset);
+            }
+            for (int max : prefixMax) {
+                out.writeInt(max);
+            }
+            data.writeTo(out);
+            out.flush();
+            return block.toByteArray();
+        }
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /** A data file that may contain the looked up values. */
+    static class FileMatch {
+        final String path;
+
+        final long recordCount;
+
+        final long fileSize;
+
+        final boolean bounded;
+
+        FileMatch(String path, long recordCount, long fileSize, boolean bounded) {
+            this.path = path;
+            this.recordCount = recordCount;
+            this.fileSize = fileSize;
+            this.bounded = bounded;
+        }
+    }
+
+    /** A memory-mapped segment. */
+    static class Segment implements Closeable {
+        private final RandomAccessFile file;
+
+        private final MappedByteBuffer buffer;
+
+        private final Map<Integer, Integer> blockOffsets = new LinkedHashMap<>();
+
+        private final Map<Integer, Type.PrimitiveType> types = new LinkedHashMap<>();
+
+        private final int filesOffset;
+
+        private final int fileCount;
+
+        Segment(File segmentFile) throws IOException {
+            this.file = new RandomAccessFile(segmentFile, "r");
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.getInt(0) != MAGIC) {
+                file.close();
+                throw new IOException("Not a bounds index segment: " + segmentFile);
+            }
+            this.fileCount = buffer.getInt(4);
+            int columnCount = buffer.getInt(8);
+            this.filesOffset = (int) buffer.getLong(12);
+            int pos = 20;
+            for (int i = 0; i < columnCount; i++) {
+                int fieldId = buffer.getInt(pos);
+                int typeLength = buffer.getShort(pos + 4) & 0xFFFF;
+                String typeName =
+                        new String(bytes(pos + 6, typeLength), StandardCharsets.UTF_8);
+                types.put(fieldId, BoundsIndex.type(typeName));
+                blockOffsets.put(fieldId, (int) buffer.getLong(pos + 6 + typeLength));
+                pos += 6 + typeLength + 8;
+            }
+        }
+
+        /** Number of data files in the segment. */
+        int fileCount() {
+            return fileCount;
+        }
+
+        /** The type the column was indexed with, or null if the segment has no such column. */
+        Type.PrimitiveType type(int fieldId) {
+            return types.get(fieldId);
+        }
+
+        /**
+         * Returns the files whose bounds overlap [min, max]. Either end may be null for an open
+         * range. Files without bounds for the column always match.
+         */
+        List<FileMatch> lookup(int fieldId, byte[] min, byte[] max) {
+            List<FileMatch> matches = new ArrayList<>();
+            Integer block = blockOffsets.get(fieldId);
+            if (block == null) {
+                return matches;
+            }
+            int count = buffer.getInt(block);
+            int unboundedCount = buffer.getInt(block + 4);
+            int entryOffsets = block + 8 + 4 * unboundedCount;
+            int prefixMax = entryOffsets + 4 * count;
+
+            // entries [0, end) have lower <= max
+            int end = count;
+            if (max != null) {
+                int lo = 0;
+                int hi = count;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    int entry = block + buffer.getInt(entryOffsets + 4 * mid);
+                    if (compareKey(entry, max) <= 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                end = lo;
+            }
+            // entries before start all have upper < min
+            int start = 0;
+            if (min != null) {
+                int lo = 0;
+                int hi = end;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    int maxEntry = buffer.getInt(prefixMax + 4 * mid);
+                    int entry = block + buffer.getInt(entryOffsets + 4 * maxEntry);
+                    if (compareKey(upperKey(entry), min) < 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                start = lo;
+            }
+            for (int i = start; i < end; i++) {
+                int entry = block + buffer.getInt(entryOffsets + 4 * i);
+                if (min == null || compareKey(upperKey(entry), min) >= 0) {
+                    int lowerLength = buffer.getShort(entry) & 0xFFFF;
+                    int upperLength = buffer.getShort(entry + 2 + lowerLength) & 0xFFFF;
+                    matches.add(file(buffer.getInt(entry + 4 + lowerLength + upperLength), true));
+                }
+            }
+            for (int i = 0; i < unboundedCount; i++) {
+                matches.add(file(buffer.getInt(block + 8 + 4 * i), false));
+            }
+            return matches;
+        }
+
+        private int upperKey(int entry) {
+            return entry + 2 + (buffer.getShort(entry) & 0xFFFF);
+        }
+
+        /** Compares the length-prefixed key at the position with an encoded key. */
+        private int compareKey(int pos, byte[] key) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            int common = Math.min(length, key.length);
+            for (int i = 0; i < common; i++) {
+                int c = (buffer.get(pos + 2 + i) & 0xFF) - (key[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return length - key.length;
+        }
+
+        private FileMatch file(int fileIndex, boolean bounded) {
+            int pos = filesOffset + 4 * fileCount + buffer.getInt(filesOffset + 4 * fileIndex);
+            int pathLength = buffer.getInt(pos + 16);
+            return new FileMatch(
+                    new String(bytes(pos + 20, pathLength), StandardCharsets.UTF_8),
+                    buffer.getLong(pos),
+                    buffer.getLong(pos + 8),
+                    bounded);
+        }
+
+        private byte[] bytes(int pos, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(pos + i);
+            }
+            return bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Builds or updates the {@link BoundsIndex} of a snapshot. Segments of manifests that were indexed
+ * before, e.g. for an earlier snapshot, are reused as is.
+ */
+public class BoundsIndexTool implements Tool {
+    static final String LATEST_FILE = "latest";
+
+    @Override
+    public String getName() {
+        return "bounds-index";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Builds an on-disk index of the column bounds of a snapshot's data files.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts("snapshot-id", "Snapshot to index (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests indexed in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 2) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        IcebergMetadata.SnapshotInfo snapshot =
+                optionSet.has(snapshotOption)
+                        ? metadata.snapshot(snapshotOption.value(optionSet))
+                        : metadata.currentSnapshot();
+        if (snapshot == null) {
+            err.println("Snapshot not found");
+            return 1;
+        }
+        File indexDir = new File(nargs.get(1));
+        if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+            err.println("Cannot create index directory " + indexDir);
+            return 1;
+        }
+
+        List<String> manifests = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (ManifestListReader.ManifestInfo manifest : ManifestListReader.read(snapshot)) {
+            if (manifest.content() != ManifestListReader.CONTENT_DATA) {
+                continue;
+            }
+            manifests.add(manifest.path());
+            File segment =
+                    new File(
+                            new File(indexDir, BoundsIndex.SEGMENT_DIR),
+                            BoundsIndex.segmentName(manifest.path()));
+            if (!segment.exists()) {
+                tasks.add(
+                        () -> {
+                            BoundsIndex.writeSegment(
+                                    manifest.path(), metadata.fieldTypes(), indexDir);
+                            return null;
+                        });
+            }
+        }
+        Util.runInParallel(tasks, threadsOption.value(optionSet));
+
+        writeSnapshotIndex(indexDir, snapshot, metadata, manifests);
+        out.println(
+                String.format(
+                        "Indexed snapshot %d: %d manifests, %d new segments, %d reused",
+                        snapshot.snapshotId(),
+                        manifests.size(),
+                        tasks.size(),
+                        manifests.size() - tasks.size()));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println("bounds-index [--snapshot-id=X] [--threads=N] metadata-json-file index-dir");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Re-running on a newer snapshot only indexes the manifests added since.");
+    }
+
+    static File snapshotIndexFile(File indexDir, long snapshotId) {
+        return new File(indexDir, "snapshot-" + snapshotId + ".json");
+    }
+
+    private static void writeSnapshotIndex(
+            File indexDir,
+            IcebergMetadata.SnapshotInfo snapshot,
+            IcebergMetadata metadata,
+            List<String> manifests)
+            throws IOException {
+        File target = snapshotIndexFile(indexDir, snapshot.snapshotId());
+        File tmp = File.createTempFile(target.getName(), ".tmp", indexDir);
+        try (JsonGenerator generator =
+                new JsonFactory().createGenerator(tmp, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeNumberField("snapshot-id", snapshot.snapshotId());
+            generator.writeNumberField("timestamp-ms", snapshot.timestampMs());
+            generator.writeArrayFieldStart("fields");
+            for (Map.Entry<Integer, String> field : metadata.fieldTypes().entrySet()) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", field.getKey());
+                generator.writeStringField("name", metadata.fieldNames().get(field.getKey()));
+                generator.writeStringField("type", field.getValue());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("segments");
+            for (String manifest : manifests) {
+                generator.writeStartObject();
+                generator.writeStringField("manifest", manifest);
+                generator.writeStringField("segment", BoundsIndex.segmentName(manifest));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        File latest = new File(indexDir, LATEST_FILE);
+        File latestTmp = File.createTempFile(LATEST_FILE, ".tmp", indexDir);
+        Files.write(
+                latestTmp.toPath(),
+                Long.toString(snapshot.snapshotId()).getBytes(StandardCharsets.UTF_8));
+        Files.move(latestTmp.toPath(), latest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+}
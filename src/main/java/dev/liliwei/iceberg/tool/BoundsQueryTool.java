@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.iceberg.types.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/** Looks up the data files whose bounds may contain a value or overlap a range. */
+public class BoundsQueryTool implements Tool {
+    @Override
+    public String getName() {
+        return "bounds-query";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Lists the data files that may contain a value, using a bounds-index directory.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts(
+                                "snapshot-id",
+                                "Indexed snapshot to query (default is the last indexed one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<String> columnOption =
+                optionParser
+                        .accepts("column", "Column name or field id.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<String> valueOption =
+                optionParser
+                        .accepts("value", "Value to look up.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<String> minOption =
+                optionParser
+                        .accepts("min", "Inclusive lower end of the range to look up.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<String> maxOption =
+                optionParser
+                        .accepts("max", "Inclusive upper end of the range to look up.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 1 || !optionSet.has(columnOption)) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        long start = System.nanoTime();
+        File indexDir = new File(nargs.get(0));
+        long snapshotId =
+                optionSet.has(snapshotOption)
+                        ? snapshotOption.value(optionSet)
+                        : latestSnapshotId(indexDir);
+        JsonObject index;
+        try (Reader reader =
+                Files.newBufferedReader(
+                        BoundsIndexTool.snapshotIndexFile(indexDir, snapshotId).toPath(),
+                        StandardCharsets.UTF_8)) {
+            index = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+
+        Integer fieldId = resolveColumn(index, columnOption.value(optionSet));
+        if (fieldId == null) {
+            err.println("Unknown column: " + columnOption.value(optionSet));
+            return 1;
+        }
+        String min = optionSet.has(valueOption) ? valueOption.value(optionSet) : null;
+        String max = min;
+        if (optionSet.has(minOption)) {
+            min = minOption.value(optionSet);
+        }
+        if (optionSet.has(maxOption)) {
+            max = maxOption.value(optionSet);
+        }
+
+        JsonGenerator generator = Util.jsonLines(out);
+
+        int matches = 0;
+        int files = 0;
+        for (JsonElement segmentJson : index.getAsJsonArray("segments")) {
+            String segmentName = segmentJson.getAsJsonObject().get("segment").getAsString();
+            File segmentFile =
+                    new File(new File(indexDir, BoundsIndex.SEGMENT_DIR), segmentName);
+            try (BoundsIndex.Segment segment = new BoundsIndex.Segment(segmentFile)) {
+                files += segment.fileCount();
+                // segments keep the type they were built with, which may predate a promotion
+                Type.PrimitiveType type = segment.type(fieldId);
+                if (type == null) {
+                    continue; // column added after the manifest was written, all values null
+                }
+                byte[] minKey;
+                byte[] maxKey;
+                try {
+                    minKey = min == null ? null : encode(type, min);
+                    maxKey = max == null ? null : encode(type, max);
+                } catch (IllegalArgumentException e) {
+                    err.println("Invalid value for " + type + ": " + e.getMessage());
+                    return 1;
+                }
+                for (BoundsIndex.FileMatch match : segment.lookup(fieldId, minKey, maxKey)) {
+                    generator.writeStartObject();
+                    generator.writeStringField("file_path", match.path);
+                    generator.writeNumberField("record_count", match.recordCount);
+                    generator.writeNumberField("file_size_in_bytes", match.fileSize);
+                    generator.writeBooleanField("bounded", match.bounded);
+                    generator.writeEndObject();
+                    matches += 1;
+                }
+            }
+        }
+        generator.flush();
+        out.flush();
+        err.println(
+                String.format(
+                        "%d of %d files may match, %.1f ms",
+                        matches, files, (System.nanoTime() - start) / 1e6));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "bounds-query [--snapshot-id=X] --column=C (--value=V | [--min=A] [--max=B])"
+                        + " index-dir");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Dates, times and timestamps use ISO-8601, binary values are hex encoded.");
+    }
+
+    private static long latestSnapshotId(File indexDir) throws IOException {
+        byte[] latest =
+                Files.readAllBytes(new File(indexDir, BoundsIndexTool.LATEST_FILE).toPath());
+        return Long.parseLong(new String(latest, StandardCharsets.UTF_8).trim());
+    }
+
+    private static byte[] encode(Type.PrimitiveType type, String value) {
+        return BoundsIndex.encode(type, BoundsIndex.parse(type, value));
+    }
+
+    private static Integer resolveColumn(JsonObject index, String column) {
+        for (JsonElement fieldJson : index.getAsJsonArray("fields")) {
+            JsonObject field = fieldJson.getAsJsonObject();
+            if (column.equals(field.get("name").getAsString())
+                    || column.equals(field.get("id").getAsString())) {
+                return field.get("id").getAsInt();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.util.concurrent.RateLimiter;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Discovers the Iceberg tables under a warehouse root and prints a summary of the current
+ * snapshot of each table as soon as it is read.
+ *
+ * <p>Directory listings, metadata files, manifest lists and manifests are all read as tasks of one
+ * shared pool. Tasks never wait for each other, only for the {@link Throttle} of their filesystem,
+ * which bounds the concurrent requests and the request rate per scheme and authority. A task holds
+ * at most one permit at a time, so throttles cannot deadlock. Files are read without read-ahead,
+ * so a permit covers exactly one request stream rather than several concurrent ranged reads. A
+ * failure only affects the table it occurs in and is reported in that table's line.
+ */
+public class CrawlTool implements Tool {
+    static final String METADATA_DIR = "metadata";
+
+    static final String VERSION_HINT = "version-hint.text";
+
+    static final String METADATA_SUFFIX = ".metadata.json";
+
+    /** Matches v12.metadata.json of Hadoop tables and 00012-uuid.metadata.json of catalogs. */
+    private static final Pattern VERSION = Pattern.compile("^v?(\\d+)[.-].*");
+
+    private final Map<String, Throttle> throttles = new ConcurrentHashMap<>();
+
+    private final AtomicInteger tables = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicInteger manifests = new AtomicInteger();
+
+    private ExecutorService pool;
+
+    private int maxConcurrent;
+
+    private double maxRate;
+
+    @Override
+    public String getName() {
+        return "crawl";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Finds the tables under a warehouse directory and summarizes each of them.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Size of the shared pool of I/O tasks.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(16);
+        OptionSpec<Integer> concurrencyOption =
+                optionParser
+                        .accepts(
+                                "max-concurrent-per-fs",
+                                "Maximum number of requests in flight per filesystem.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(8);
+        OptionSpec<Double> rateOption =
+                optionParser
+                        .accepts(
+                                "max-requests-per-second",
+                                "Maximum number of requests started per second and filesystem,"
+                                        + " 0 for no limit.")
+                        .withRequiredArg()
+                        .ofType(Double.class)
+                        .defaultsTo(0.0);
+        OptionSpec<Integer> depthOption =
+                optionParser
+                        .accepts("max-depth", "Maximum directory depth searched for tables.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(8);
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 1) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        maxConcurrent = concurrencyOption.value(optionSet);
+        maxRate = rateOption.value(optionSet);
+        long start = System.nanoTime();
+
+        JsonGenerator generator = Util.jsonLines(out);
+
+        pool = Util.newPool(threadsOption.value(optionSet), "crawl");
+        try {
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            discover(
+                    new Path(nargs.get(0)),
+                    depthOption.value(optionSet),
+                    metadataDir -> pending.add(crawlTable(metadataDir, generator, out)),
+                    err);
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            pool.shutdownNow();
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "%d tables, %d failed, %d manifests read in %.1f s",
+                        tables.get(),
+                        failures.get(),
+                        manifests.get(),
+                        (System.nanoTime() - start) / 1e9));
+        return failures.get() == 0 ? 0 : 2;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "crawl [--threads=N] [--max-concurrent-per-fs=N] [--max-requests-per-second=R]"
+                        + " [--max-depth=D] warehouse-dir");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("A table is a directory with a 'metadata' subdirectory holding metadata.json");
+        ps.println("files; its other subdirectories are not searched. Prints one JSON line per");
+        ps.println("table and exits with 2 if any table failed.");
+    }
+
+    private interface TableListener {
+        void found(Path metadataDir);
+    }
+
+    /**
+     * Lists the directory tree breadth first, one level at a time with all listings of a level
+     * running in parallel, and reports every table metadata directory as soon as it is seen.
+     */
+    private void discover(Path root, int maxDepth, TableListener listener, PrintStream err) {
+        List<Path> level = new ArrayList<>();
+        level.add(root);
+        for (int depth = 0; depth <= maxDepth && !level.isEmpty(); depth++) {
+            List<CompletableFuture<FileStatus[]>> listings = new ArrayList<>();
+            for (Path dir : level) {
+                listings.add(
+                        async(() -> throttle(dir).call(() -> fileSystem(dir).listStatus(dir))));
+            }
+            List<Path> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++) {
+                FileStatus[] children;
+                try {
+                    children = listings.get(i).join();
+                } catch (CompletionException e) {
+                    err.println("Cannot list " + level.get(i) + ": " + e.getCause());
+                    continue;
+                }
+                Path metadataDir = null;
+                for (FileStatus child : children) {
+                    if (child.isDirectory() && child.getPath().getName().equals(METADATA_DIR)) {
+                        metadataDir = child.getPath();
+                    }
+                }
+                if (metadataDir != null) {
+                    listener.found(metadataDir);
+                    continue;
+                }
+                for (FileStatus child : children) {
+                    if (child.isDirectory()) {
+                        next.add(child.getPath());
+                    }
+                }
+            }
+            level = next;
+        }
+    }
+
+    private CompletableFuture<Void> crawlTable(
+            Path metadataDir, JsonGenerator generator, PrintStream out) {
+        tables.incrementAndGet();
+        long start = System.nanoTime();
+        Path tableDir = metadataDir.getParent();
+        TableSummary summary = new TableSummary();
+        return async(
+                        () -> {
+                            Path metadataFile = latestMetadataFile(metadataDir);
+                            summary.metadataFile = metadataFile;
+                            return throttle(metadataFile)
+                                    .call(() -> IcebergMetadata.read(metadataFile.toString()));
+                        })
+                .thenCompose(
+                        metadata -> {
+                            summary.metadata = metadata;
+                            IcebergMetadata.SnapshotInfo snapshot = metadata.currentSnapshot();
+                            if (snapshot == null) {
+                                return CompletableFuture.completedFuture(null);
+                            }
+                            Path listPath =
+                                    new Path(
+                                            snapshot.manifestList() != null
+                                                    ? snapshot.manifestList()
+                                                    : metadataDir.toString());
+                            return async(
+                                            () ->
+                                                    throttle(listPath)
+                                                            .call(
+                                                                    () ->
+                                                                            ManifestListReader.read(
+                                                                                    snapshot)))
+                                    .thenCompose(list -> readManifests(list, summary));
+                        })
+                .handle(
+                        (ignored, error) -> {
+                            summary.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                            if (error != null) {
+                                failures.incrementAndGet();
+                            }
+                            write(
+                                    tableDir,
+                                    summary,
+                                    error instanceof CompletionException
+                                            ? error.getCause()
+                                            : error,
+                                    generator,
+                                    out);
+                            return null;
+                        });
+    }
+
+    private CompletableFuture<Void> readManifests(
+            List<ManifestListReader.ManifestInfo> list, TableSummary summary) {
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (ManifestListReader.ManifestInfo manifest : list) {
+            Path path = new Path(manifest.path());
+            reads.add(
+                    async(
+                            () ->
+                                    throttle(path)
+                                            .call(
+                                                    () -> {
+                                                        readManifest(manifest.path(), summary);
+                                                        manifests.incrementAndGet();
+                                                        return null;
+                                                    })));
+        }
+        summary.manifests = list.size();
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private static void readManifest(String manifest, TableSummary summary) throws IOException {
+        long dataFiles = 0;
+        long deleteFiles = 0;
+        long records = 0;
+        long bytes = 0;
+        try (DataFileStream<GenericRecord> stream =
+                ManifestEntries.openProjected(
+                        manifest, "content", "record_count", "file_size_in_bytes")) {
+            GenericRecord entry = null;
+            while (stream.hasNext()) {
+                entry = stream.next(entry);
+                if (!ManifestEntries.isLive(entry)) {
+                    continue;
+                }
+                GenericRecord dataFile = ManifestEntries.dataFile(entry);
+                if (ManifestEntries.content(dataFile) == ManifestEntries.CONTENT_DATA) {
+                    dataFiles += 1;
+                    records += ManifestEntries.recordCount(dataFile);
+                } else {
+                    deleteFiles += 1;
+                }
+                bytes += ManifestEntries.fileSizeInBytes(dataFile);
+            }
+        }
+        summary.add(dataFiles, deleteFiles, records, bytes);
+    }
+
+    /** Picks the metadata file named by version-hint.text, or else the highest version. */
+    private Path latestMetadataFile(Path metadataDir) throws IOException {
+        FileSystem fs = fileSystem(metadataDir);
+        FileStatus[] files = throttle(metadataDir).call(() -> fs.listStatus(metadataDir));
+        for (FileStatus file : files) {
+            if (file.getPath().getName().equals(VERSION_HINT)) {
+                Path hinted =
+                        new Path(metadataDir, "v" + readHint(file.getPath()) + METADATA_SUFFIX);
+                if (throttle(hinted).call(() -> fs.exists(hinted))) {
+                    return hinted;
+                }
+            }
+        }
+        FileStatus latest = latestVersion(files);
+        if (latest == null) {
+            throw new IOException("No metadata.json file in " + metadataDir);
+        }
+        return latest.getPath();
+    }
+
+    /**
+     * Returns the metadata file with the highest version in a directory listing, the most recently
+     * modified one among equal versions, or null if there is none.
+     */
+    static FileStatus latestVersion(FileStatus[] files) {
+        FileStatus latest = null;
+        long latestVersion = -1;
+        for (FileStatus file : files) {
+            String name = file.getPath().getName();
+            if (!name.endsWith(METADATA_SUFFIX)) {
+                continue;
+            }
+            Matcher matcher = VERSION.matcher(name);
+            long version = matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+            if (latest == null
+                    || version > latestVersion
+                    || (version == latestVersion
+                            && file.getModificationTime() > latest.getModificationTime())) {
+                latest = file;
+                latestVersion = version;
+            }
+        }
+        return latest;
+    }
+
+    private String readHint(Path hint) throws IOException {
+        return throttle(hint)
+                .call(
+                        () -> {
+                            try (BufferedReader reader =
+                                    new BufferedReader(
+                                            new InputStreamReader(
+                                                    fileSystem(hint).open(hint),
+                                                    StandardCharsets.UTF_8))) {
+                                return reader.readLine().trim();
+                            }
+                        });
+    }
+
+    private void write(
+            Path tableDir,
+            TableSummary summary,
+            Throwable error,
+            JsonGenerator generator,
+            PrintStream out) {
+        synchronized (generator) {
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("table", tableDir.toString());
+                if (summary.metadataFile != null) {
+                    generator.writeStringField("metadata", summary.metadataFile.toString());
+                }
+                if (error != null) {
+                    generator.writeStringField("error", error.toString());
+                } else {
+                    IcebergMetadata metadata = summary.metadata;
+                    IcebergMetadata.SnapshotInfo snapshot = metadata.currentSnapshot();
+                    generator.writeNumberField("format_version", metadata.formatVersion());
+                    generator.writeNumberField("snapshots", metadata.snapshots().size());
+                    if (snapshot != null) {
+                        generator.writeNumberField("snapshot_id", snapshot.snapshotId());
+                        generator.writeNumberField("timestamp_ms", snapshot.timestampMs());
+                    }
+                    generator.writeNumberField("manifests", summary.manifests);
+                    generator.writeNumberField("data_files", summary.dataFiles);
+                    generator.writeNumberField("delete_files", summary.deleteFiles);
+                    generator.writeNumberField("records", summary.records);
+                    generator.writeNumberField("bytes", summary.bytes);
+                }
+                generator.writeNumberField("elapsed_ms", summary.elapsedMs);
+                generator.writeEndObject();
+                generator.flush();
+                out.flush();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+
+    /** Runs a task on the shared pool; its requests go through {@link #throttle(Path)}. */
+    private <T> CompletableFuture<T> async(Callable<T> task) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return task.call();
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                pool);
+    }
+
+    private Throttle throttle(Path path) {
+        String scheme = path.toUri().getScheme();
+        String authority = path.toUri().getAuthority();
+        String key = (scheme == null ? "" : scheme) + "://" + (authority == null ? "" : authority);
+        return throttles.computeIfAbsent(key, k -> new Throttle(maxConcurrent, maxRate));
+    }
+
+    private static FileSystem fileSystem(Path path) throws IOException {
+        return path.getFileSystem(Util.conf());
+    }
+
+    /** Bounds the concurrent requests and the request rate against one filesystem. */
+    static class Throttle {
+        private final Semaphore permits;
+
+        private final RateLimiter rate;
+
+        Throttle(int maxConcurrent, double maxRate) {
+            this.permits = new Semaphore(Math.max(1, maxConcurrent));
+            this.rate = maxRate > 0 ? RateLimiter.create(maxRate) : null;
+        }
+
+        <T> T call(Callable<T> request) throws IOException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a permit");
+            }
+            try {
+                if (rate != null) {
+                    rate.acquire();
+                }
+                // read-ahead would put several ranged reads in flight for one permit
+                return ReadAheadInputStream.withoutReadAhead(request);
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /** Totals of one table, updated by its manifest tasks. */
+    private static class TableSummary {
+        private Path metadataFile;
+
+        private IcebergMetadata metadata;
+
+        private int manifests;
+
+        private long dataFiles;
+
+        private long deleteFiles;
+
+        private long records;
+
+        private long bytes;
+
+        private long elapsedMs;
+
+        synchronized void add(long dataFiles, long deleteFiles, long records, long bytes) {
+            this.dataFiles += dataFiles;
+            this.deleteFiles += deleteFiles;
+            this.records += records;
+            this.bytes += bytes;
+        }
+    }
+}
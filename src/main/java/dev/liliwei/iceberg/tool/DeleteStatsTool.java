@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Measures the read amplification that delete files cause per partition of a snapshot, to rank
+ * the partitions that most need compaction.
+ *
+ * <p>The data and delete manifests are loaded in parallel into a {@link ManifestEntryStore}.
+ * Delete files are matched to data files the way a scan plans them: a position delete applies to
+ * the data files of its partition with a sequence number lower or equal to its own, an equality
+ * delete to those with a strictly lower one, and equality deletes of an unpartitioned spec to the
+ * data files of every partition. The sequence numbers of the deletes of a partition are sorted
+ * once with suffix sums of their sizes, so each data file is matched with a binary search.
+ */
+public class DeleteStatsTool implements Tool {
+    @Override
+    public String getName() {
+        return "delete-stats";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Ranks the partitions of a snapshot by the read amplification of their deletes.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts("snapshot-id", "Snapshot to read (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<String> orderByOption =
+                optionParser
+                        .accepts("order-by", "One of bytes, ratio or deletes.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("bytes");
+        OptionSpec<Integer> limitOption =
+                optionParser
+                        .accepts("limit", "Number of partitions listed, 0 for all.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(20);
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests loaded in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        String orderBy = orderByOption.value(optionSet);
+        if (nargs.size() != 1
+                || limitOption.value(optionSet) < 0
+                || !(orderBy.equals("bytes")
+                        || orderBy.equals("ratio")
+                        || orderBy.equals("deletes"))) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        IcebergMetadata.SnapshotInfo snapshot =
+                optionSet.has(snapshotOption)
+                        ? metadata.snapshot(snapshotOption.value(optionSet))
+                        : metadata.currentSnapshot();
+        if (snapshot == null) {
+            err.println("Snapshot not found");
+            return 1;
+        }
+
+        long start = System.nanoTime();
+        ManifestEntryStore store =
+                ManifestEntryStore.load(
+                        ManifestListReader.read(snapshot),
+                        metadata.fieldTypes(),
+                        Collections.<Integer>emptySet(),
+                        threadsOption.value(optionSet));
+        long loaded = System.nanoTime();
+
+        Map<String, Partition> partitions = new HashMap<>();
+        Partition global = new Partition(null, -1);
+        for (Map<String, Partition> chunkPartitions :
+                store.chunks().map(chunk -> collect(chunk, global)).collect(Collectors.toList())) {
+            for (Map.Entry<String, Partition> entry : chunkPartitions.entrySet()) {
+                Partition partition = partitions.get(entry.getKey());
+                if (partition == null) {
+                    partitions.put(entry.getKey(), entry.getValue());
+                } else {
+                    partition.addAll(entry.getValue());
+                }
+            }
+        }
+
+        DeleteIndex globalDeletes = new DeleteIndex(global.equalitySeqs, global.equalityBytes);
+        List<Amplification> results =
+                partitions.values().parallelStream()
+                        .map(partition -> partition.amplification(globalDeletes))
+                        .collect(Collectors.toList());
+        results.sort(comparator(orderBy));
+        int limit = limitOption.value(optionSet);
+
+        JsonGenerator generator = Util.jsonLines(out);
+        long dataFiles = 0;
+        long appliedDeletes = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Amplification result = results.get(i);
+            dataFiles += result.partition.dataSeqs.size;
+            appliedDeletes += result.appliedDeletes;
+            if (limit == 0 || i < limit) {
+                writeResult(result, generator);
+            }
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "%d data files in %d partitions, %d global equality deletes,"
+                                + " %d deletes applied (%.2f per data file), loaded in %.1f ms,"
+                                + " matched in %.1f ms",
+                        dataFiles,
+                        partitions.size(),
+                        global.equalitySeqs.size,
+                        appliedDeletes,
+                        dataFiles == 0 ? 0.0 : (double) appliedDeletes / dataFiles,
+                        (loaded - start) / 1e6,
+                        (System.nanoTime() - loaded) / 1e6));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "delete-stats [--snapshot-id=X] [--order-by=O] [--limit=N] [--threads=N]"
+                        + " metadata-json-file");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println(
+                "bytes orders by the delete bytes read with the data files, ratio by those per"
+                        + " data byte and deletes by the number of deletes applied.");
+    }
+
+    /**
+     * Groups the live files of one chunk by partition. Equality deletes of an unpartitioned spec
+     * go to the shared global partition instead.
+     */
+    private static Map<String, Partition> collect(
+            ManifestEntryStore.Chunk chunk, Partition global) {
+        Partition[] byId = new Partition[chunk.partitionCount()];
+        LongList globalSeqs = new LongList();
+        LongList globalBytes = new LongList();
+        for (int row = 0; row < chunk.size(); row++) {
+            if (chunk.status(row) == ManifestEntries.STATUS_DELETED) {
+                continue;
+            }
+            int content = chunk.content(row);
+            if (content == ManifestEntries.CONTENT_EQUALITY_DELETES && chunk.unpartitioned()) {
+                globalSeqs.add(chunk.sequenceNumber(row));
+                globalBytes.add(chunk.fileSize(row));
+                continue;
+            }
+            int id = chunk.partitionId(row);
+            if (byId[id] == null) {
+                byId[id] = new Partition(chunk.partitionString(id), chunk.specId());
+            }
+            byId[id].add(content, chunk.sequenceNumber(row), chunk.fileSize(row));
+        }
+        if (globalSeqs.size > 0) {
+            synchronized (global) {
+                global.equalitySeqs.addAll(globalSeqs);
+                global.equalityBytes.addAll(globalBytes);
+            }
+        }
+
+        Map<String, Partition> result = new HashMap<>();
+        for (Partition partition : byId) {
+            if (partition != null) {
+                result.put(partition.specId + "/" + partition.name, partition);
+            }
+        }
+        return result;
+    }
+
+    private static Comparator<Amplification> comparator(String orderBy) {
+        Comparator<Amplification> metric;
+        switch (orderBy) {
+            case "ratio":
+                metric = Comparator.comparingDouble(Amplification::bytesPerDataByte);
+                break;
+            case "deletes":
+                metric = Comparator.comparingLong(result -> result.appliedDeletes);
+                break;
+            default:
+                metric = Comparator.comparingLong(result -> result.deleteBytesRead);
+                break;
+        }
+        return metric.reversed()
+                .thenComparing(result -> result.partition.name)
+                .thenComparingInt(result -> result.partition.specId);
+    }
+
+    private static void writeResult(Amplification result, JsonGenerator generator)
+            throws IOException {
+        Partition partition = result.partition;
+        generator.writeStartObject();
+        generator.writeStringField("partition", partition.name);
+        generator.writeNumberField("spec_id", partition.specId);
+        generator.writeNumberField("data_files", partition.dataSeqs.size);
+        generator.writeNumberField("data_bytes", partition.dataBytes.sum());
+        generator.writeNumberField("position_delete_files", partition.positionSeqs.size);
+        generator.writeNumberField("equality_delete_files", partition.equalitySeqs.size);
+        generator.writeNumberField(
+                "delete_bytes", partition.positionBytes.sum() + partition.equalityBytes.sum());
+        generator.writeNumberField("applied_deletes", result.appliedDeletes);
+        generator.writeNumberField("deletes_per_data_file", result.deletesPerDataFile());
+        generator.writeNumberField("delete_bytes_read", result.deleteBytesRead);
+        generator.writeNumberField("delete_bytes_per_data_byte", result.bytesPerDataByte());
+        generator.writeEndObject();
+    }
+
+    /** A growable array of longs. */
+    private static class LongList {
+        private long[] values = new long[8];
+
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }
+    }
+
+    /** Sequence numbers and sizes of the live files of one partition, by content. */
+    private static class Partition {
+        private final String name;
+
+        private final int specId;
+
+        private final LongList dataSeqs = new LongList();
+
+        private final LongList dataBytes = new LongList();
+
+        private final LongList positionSeqs = new LongList();
+
+        private final LongList positionBytes = new LongList();
+
+        private final LongList equalitySeqs = new LongList();
+
+        private final LongList equalityBytes = new LongList();
+
+        Partition(String name, int specId) {
+            this.name = name;
+            this.specId = specId;
+        }
+
+        void add(int content, long sequenceNumber, long fileSize) {
+            switch (content) {
+                case ManifestEntries.CONTENT_POSITION_DELETES:
+                    positionSeqs.add(sequenceNumber);
+                    positionBytes.add(fileSize);
+                    break;
+                case ManifestEntries.CONTENT_EQUALITY_DELETES:
+                    equalitySeqs.add(sequenceNumber);
+                    equalityBytes.add(fileSize);
+                    break;
+                default:
+                    dataSeqs.add(sequenceNumber);
+                    dataBytes.add(fileSize);
+                    break;
+            }
+        }
+
+        void addAll(Partition other) {
+            dataSeqs.addAll(other.dataSeqs);
+            dataBytes.addAll(other.dataBytes);
+            positionSeqs.addAll(other.positionSeqs);
+            positionBytes.addAll(other.positionBytes);
+            equalitySeqs.addAll(other.equalitySeqs);
+            equalityBytes.addAll(other.equalityBytes);
+        }
+
+        Amplification amplification(DeleteIndex globalDeletes) {
+            DeleteIndex positionDeletes = new DeleteIndex(positionSeqs, positionBytes);
+            DeleteIndex equalityDeletes = new DeleteIndex(equalitySeqs, equalityBytes);
+            long applied = 0;
+            long bytesRead = 0;
+            for (int i = 0; i < dataSeqs.size; i++) {
+                long seq = dataSeqs.get(i);
+                int position = positionDeletes.from(seq);
+                int equality = equalityDeletes.from(seq + 1);
+                int global = globalDeletes.from(seq + 1);
+                applied +=
+                        positionDeletes.count(position)
+                                + equalityDeletes.count(equality)
+                                + globalDeletes.count(global);
+                bytesRead +=
+                        positionDeletes.bytes(position)
+                                + equalityDeletes.bytes(equality)
+                                + globalDeletes.bytes(global);
+            }
+            return new Amplification(this, applied, bytesRead);
+        }
+    }
+
+    /** Delete files sorted by sequence number, with the total size of every suffix. */
+    private static class DeleteIndex {
+        private final long[] seqs;
+
+        private final long[] suffixBytes;
+
+        DeleteIndex(LongList seqList, LongList byteList) {
+            int size = seqList.size;
+            long[][] pairs = new long[size][];
+            for (int i = 0; i < size; i++) {
+                pairs[i] = new long[] {seqList.get(i), byteList.get(i)};
+            }
+            Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+            seqs = new long[size];
+            suffixBytes = new long[size + 1];
+            for (int i = size - 1; i >= 0; i--) {
+                seqs[i] = pairs[i][0];
+                suffixBytes[i] = suffixBytes[i + 1] + pairs[i][1];
+            }
+        }
+
+        /** The index of the first delete with a sequence number of at least the given one. */
+        int from(long sequenceNumber) {
+            int low = 0;
+            int high = seqs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (seqs[mid] < sequenceNumber) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int count(int from) {
+            return seqs.length - from;
+        }
+
+        long bytes(int from) {
+            return suffixBytes[from];
+        }
+    }
+
+    private static class Amplification {
+        private final Partition partition;
+
+        private final long appliedDeletes;
+
+        private final long deleteBytesRead;
+
+        Amplification(Partition partition, long appliedDeletes, long deleteBytesRead) {
+            this.partition = partition;
+            this.appliedDeletes = appliedDeletes;
+            this.deleteBytesRead = deleteBytesRead;
+        }
+
+        double deletesPerDataFile() {
+            int dataFiles = partition.dataSeqs.size;
+            return dataFiles == 0 ? 0.0 : (double) appliedDeletes / dataFiles;
+        }
+
+        double bytesPerDataByte() {
+            long dataBytes = partition.dataBytes.sum();
+            return dataBytes == 0 ? 0.0 : (double) deleteBytesRead / dataBytes;
+        }
+    }
+}
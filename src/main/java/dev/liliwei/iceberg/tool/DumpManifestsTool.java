@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Dumps many manifests as JSON lines, in shards that are committed one at a time, so that an
+ * interrupted dump can be resumed without redoing or duplicating finished work.
+ *
+ * <p>Manifests are read block by block through {@link AvroBlocks}. A shard holds whole Avro blocks
+ * and is written under a temporary name and renamed when it is complete. After each rename the
+ * progress of the manifest, the number of committed shards and the offset of the next block, is
+ * appended to a log next to the checkpoint and synced, so a commit costs one short line whatever
+ * the number of manifests. When the dump completes, the log is compacted into the checkpoint,
+ * which is replaced atomically. A restart replays the log over the checkpoint, skips finished
+ * manifests and seeks the others straight to their next block; a shard written again after a
+ * crash gets the same name and content as before, so it replaces the earlier one instead of
+ * duplicating it.
+ */
+public class DumpManifestsTool implements Tool {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    @Override
+    public String getName() {
+        return "dump-manifests";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Dumps many manifests as JSON line shards, resumable from a checkpoint.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts(
+                                "snapshot-id",
+                                "Snapshot whose manifests are dumped when no manifest file is"
+                                        + " given (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Long> shardOption =
+                optionParser
+                        .accepts(
+                                "shard-entries",
+                                "Entries after which a shard is committed, at the next block"
+                                        + " boundary.")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(100000L);
+        OptionSpec<String> checkpointOption =
+                optionParser
+                        .accepts("checkpoint", "Local file to resume from and to record progress.")
+                        .withRequiredArg()
+                        .describedAs("file");
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests dumped in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        long shardEntries = shardOption.value(optionSet);
+        if (nargs.size() < 2 || shardEntries <= 0) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        List<String> paths = new ArrayList<>(nargs.subList(2, nargs.size()));
+        if (paths.isEmpty()) {
+            IcebergMetadata.SnapshotInfo snapshot =
+                    optionSet.has(snapshotOption)
+                            ? metadata.snapshot(snapshotOption.value(optionSet))
+                            : metadata.currentSnapshot();
+            if (snapshot == null) {
+                err.println("Snapshot not found");
+                return 1;
+            }
+            for (ManifestListReader.ManifestInfo manifest : ManifestListReader.read(snapshot)) {
+                paths.add(manifest.path());
+            }
+        }
+
+        Path outputDir = new Path(nargs.get(1));
+        FileSystem fs = outputDir.getFileSystem(Util.conf());
+        fs.mkdirs(outputDir);
+        Checkpoint checkpoint =
+                new Checkpoint(
+                        optionSet.has(checkpointOption)
+                                ? Paths.get(checkpointOption.value(optionSet))
+                                : null);
+
+        List<Callable<Progress>> tasks = new ArrayList<>();
+        int skipped = 0;
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            Progress progress = checkpoint.get(path);
+            if (progress.done) {
+                skipped += 1;
+                continue;
+            }
+            String prefix = Util.outputPrefix(i, path);
+            tasks.add(
+                    () ->
+                            dump(
+                                    path,
+                                    progress,
+                                    metadata.fieldTypes(),
+                                    fs,
+                                    outputDir,
+                                    prefix,
+                                    shardEntries,
+                                    checkpoint));
+        }
+
+        long start = System.nanoTime();
+        List<Progress> results;
+        try {
+            results = Util.runInParallel(tasks, threadsOption.value(optionSet));
+        } finally {
+            checkpoint.compact();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        JsonGenerator generator = Util.jsonLines(out);
+        long entries = 0;
+        for (Progress result : results) {
+            generator.writeStartObject();
+            generator.writeStringField("manifest", result.manifest);
+            generator.writeNumberField("shards", result.shards);
+            generator.writeNumberField("entries", result.entries);
+            generator.writeEndObject();
+            entries += result.entries;
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Dumped %d manifests with %d entries in %d ms, %d already complete",
+                        results.size(), entries, elapsedMs, skipped));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "dump-manifests [--snapshot-id=X] [--shard-entries=N] [--checkpoint=file]"
+                        + " [--threads=N] metadata-json-file output-dir [manifest-file ...]");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Without manifest files, the manifests of the snapshot are dumped.");
+        ps.println("Run again with the same arguments and checkpoint to resume.");
+    }
+
+    /** Dumps the remaining blocks of a manifest, committing a shard every shardEntries. */
+    private static Progress dump(
+            String path,
+            Progress progress,
+            Map<Integer, String> fieldTypes,
+            FileSystem fs,
+            Path outputDir,
+            String prefix,
+            long shardEntries,
+            Checkpoint checkpoint)
+            throws IOException {
+        SeekableInput input = Util.openSeekableFromFS(path);
+        try (DataFileReader<Object> fileReader =
+                new DataFileReader<>(input, new GenericDatumReader<>())) {
+            AvroBlocks blocks = new AvroBlocks(input);
+            Schema schema = fileReader.getSchema();
+            DatumWriter<Object> writer = new IcebergDatumWriter<>(schema, fieldTypes);
+            long offset = progress.nextBlock >= 0 ? progress.nextBlock : fileReader.previousSync();
+
+            Shard shard = null;
+            Object datum = null;
+            for (AvroBlocks.Block block = blocks.read(offset);
+                    block != null;
+                    block = blocks.read(block.next)) {
+                if (shard == null) {
+                    shard = new Shard(fs, outputDir, prefix, progress.shards, schema);
+                }
+                fileReader.seek(block.offset);
+                for (long r = 0; r < block.count; r++) {
+                    datum = fileReader.next(datum);
+                    writer.write(datum, shard.encoder);
+                }
+                shard.entries += block.count;
+                if (shard.entries >= shardEntries) {
+                    shard.commit();
+                    progress = checkpoint.update(progress.commit(shard.entries, block.next));
+                    shard = null;
+                }
+            }
+            if (shard != null) {
+                shard.commit();
+                progress = progress.commit(shard.entries, blocks.length());
+            }
+            return checkpoint.update(progress.finish());
+        }
+    }
+
+    /** A shard being written under a temporary name. */
+    private static class Shard {
+        private final FileSystem fs;
+
+        private final Path file;
+
+        private final Path tmp;
+
+        private final OutputStream stream;
+
+        private final IcebergEncoder encoder;
+
+        private long entries = 0;
+
+        Shard(FileSystem fs, Path outputDir, String prefix, int index, Schema schema)
+                throws IOException {
+            this.fs = fs;
+            String name = String.format("%s.%05d.json", prefix, index);
+            this.file = new Path(outputDir, name);
+            // hidden from readers that skip names starting with a dot
+            this.tmp = new Path(outputDir, "." + name + ".tmp");
+            this.stream = new BufferedOutputStream(fs.create(tmp, true), BUFFER_SIZE);
+            this.encoder = new IcebergEncoder(schema, stream);
+        }
+
+        void commit() throws IOException {
+            encoder.flush();
+            stream.write(LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8));
+            stream.close();
+            // the shard may have been committed before a crash that lost its checkpoint
+            fs.delete(file, false);
+            if (!fs.rename(tmp, file)) {
+                throw new IOException("Could not rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    /** The committed progress of one manifest; immutable, replaced on every commit. */
+    static class Progress {
+        final String manifest;
+
+        /** The offset of the next block to dump, or -1 to start at the first block. */
+        final long nextBlock;
+
+        final int shards;
+
+        final long entries;
+
+        final boolean done;
+
+        Progress(String manifest, long nextBlock, int shards, long entries, boolean done) {
+            this.manifest = manifest;
+            this.nextBlock = nextBlock;
+            this.shards = shards;
+            this.entries = entries;
+            this.done = done;
+        }
+
+        Progress commit(long shardEntries, long next) {
+            return new Progress(manifest, next, shards + 1, entries + shardEntries, false);
+        }
+
+        Progress finish() {
+            return new Progress(manifest, nextBlock, shards, entries, true);
+        }
+    }
+
+    /**
+     * The progress of all manifests, kept in a small local JSON file and an append-only log of
+     * the updates made since the file was last written.
+     */
+    static class Checkpoint {
+        private final java.nio.file.Path file;
+
+        private final java.nio.file.Path log;
+
+        private final Map<String, Progress> manifests = new LinkedHashMap<>();
+
+        private FileChannel logChannel;
+
+        Checkpoint(java.nio.file.Path file) throws IOException {
+            this.file = file;
+            this.log = file == null ? null : file.resolveSibling(file.getFileName() + ".log");
+            if (file == null) {
+                return;
+            }
+            if (Files.exists(file)) {
+                JsonObject root =
+                        JsonParser.parseString(
+                                        new String(
+                                                Files.readAllBytes(file), StandardCharsets.UTF_8))
+                                .getAsJsonObject();
+                for (Map.Entry<String, JsonElement> entry :
+                        root.getAsJsonObject("manifests").entrySet()) {
+                    put(entry.getKey(), entry.getValue().getAsJsonObject());
+                }
+            }
+            if (Files.exists(log)) {
+                for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+                    JsonObject json;
+                    try {
+                        json = JsonParser.parseString(line).getAsJsonObject();
+                    } catch (JsonParseException | IllegalStateException e) {
+                        // the last line may be cut short by a crash, its shard is written again
+                        break;
+                    }
+                    put(json.get("manifest").getAsString(), json);
+                }
+            }
+        }
+
+        private void put(String manifest, JsonObject json) {
+            manifests.put(
+                    manifest,
+                    new Progress(
+                            manifest,
+                            json.get("next_block").getAsLong(),
+                            json.get("shards").getAsInt(),
+                            json.get("entries").getAsLong(),
+                            json.get("done").getAsBoolean()));
+        }
+
+        synchronized Progress get(String manifest) {
+            Progress progress = manifests.get(manifest);
+            return progress != null ? progress : new Progress(manifest, -1, 0, 0, false);
+        }
+
+        /** Records the progress of a manifest and appends it to the log. */
+        synchronized Progress update(Progress progress) throws IOException {
+            manifests.put(progress.manifest, progress);
+            if (file == null) {
+                return progress;
+            }
+            if (logChannel == null) {
+                logChannel =
+                        FileChannel.open(
+                                log,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND);
+            }
+            JsonObject json = toJson(progress);
+            json.addProperty("manifest", progress.manifest);
+            ByteBuffer line =
+                    ByteBuffer.wrap((json + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                logChannel.write(line);
+            }
+            logChannel.force(false);
+            return progress;
+        }
+
+        /** Writes the progress of all manifests to the checkpoint and removes the log. */
+        synchronized void compact() throws IOException {
+            if (file == null) {
+                return;
+            }
+            if (logChannel != null) {
+                logChannel.close();
+                logChannel = null;
+            }
+            JsonObject all = new JsonObject();
+            for (Progress p : manifests.values()) {
+                all.add(p.manifest, toJson(p));
+            }
+            JsonObject root = new JsonObject();
+            root.add("manifests", all);
+            Util.writeAtomically(file, root.toString());
+            // replaying a log left by a crash here only repeats what the checkpoint holds
+            Files.deleteIfExists(log);
+        }
+
+        private static JsonObject toJson(Progress progress) {
+            JsonObject json = new JsonObject();
+            json.addProperty("next_block", progress.nextBlock);
+            json.addProperty("shards", progress.shards);
+            json.addProperty("entries", progress.entries);
+            json.addProperty("done", progress.done);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Finds data and delete files that are referenced by more than one live manifest entry of a
+ * snapshot, and files whose entry status history is inconsistent.
+ *
+ * <p>The first pass reduces every manifest entry to a 64-bit hash of its file path and a packed
+ * (manifest, snapshot, status) reference, which are grouped with a {@link LongPairSorter} that
+ * spills to disk beyond the configured memory. Only the hashes of suspicious groups are kept, and a
+ * second pass resolves them back to the real file paths and re-checks them exactly, so hash
+ * collisions never show up in the report.
+ */
+public class FindDuplicatesTool implements Tool {
+    private static final int DEFAULT_MAX_MEMORY_MB = 256;
+
+    private static final int BATCH_SIZE = 4096;
+
+    private static final int MAX_REPORTED_SNAPSHOTS = 10;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static final String[] STATUS_NAMES = {"EXISTING", "ADDED", "DELETED"};
+
+    @Override
+    public String getName() {
+        return "find-duplicates";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Finds files referenced by several live manifest entries or with an inconsistent"
+                + " status history.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts("snapshot-id", "Snapshot to check (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Void> allSnapshotsOption =
+                optionParser.accepts(
+                        "all-snapshots", "Checks every snapshot still in the metadata.");
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests read in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+        OptionSpec<Integer> maxMemoryOption =
+                optionParser
+                        .accepts(
+                                "max-memory-mb",
+                                "Memory used to group entries before spilling to disk.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(DEFAULT_MAX_MEMORY_MB);
+        OptionSpec<String> tmpDirOption =
+                optionParser
+                        .accepts("tmp-dir", "Directory of spilled sort runs.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 1) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        List<IcebergMetadata.SnapshotInfo> selected;
+        if (optionSet.has(allSnapshotsOption)) {
+            selected = metadata.snapshots();
+        } else if (optionSet.has(snapshotOption)) {
+            IcebergMetadata.SnapshotInfo snapshot =
+                    metadata.snapshot(snapshotOption.value(optionSet));
+            if (snapshot == null) {
+                err.println("Snapshot not found: " + snapshotOption.value(optionSet));
+                return 1;
+            }
+            selected = Collections.singletonList(snapshot);
+        } else if (metadata.currentSnapshot() != null) {
+            selected = Collections.singletonList(metadata.currentSnapshot());
+        } else {
+            selected = Collections.emptyList();
+        }
+
+        String tmpDir = tmpDirOption.value(optionSet);
+        Scan scan =
+                new Scan(
+                        metadata,
+                        selected,
+                        threadsOption.value(optionSet),
+                        maxMemoryOption.value(optionSet) * 1024L * 1024L,
+                        tmpDir == null ? null : new File(tmpDir));
+        JsonGenerator generator = Util.jsonLines(out);
+        int findings = scan.run(generator);
+        generator.flush();
+        out.flush();
+        err.println(
+                String.format(
+                        "Checked %d entries in %d manifests of %d snapshots (%d spilled runs),"
+                                + " %d findings",
+                        scan.entries.get(),
+                        scan.manifests.size(),
+                        selected.size(),
+                        scan.spilledRuns,
+                        findings));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "find-duplicates [--snapshot-id=X | --all-snapshots] [--threads=N]"
+                        + " [--max-memory-mb=M] metadata-json-file");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Prints one JSON finding per line: duplicate, added-multiple-times or");
+        ps.println("live-after-delete.");
+    }
+
+    static long hash(String path) {
+        return HASH.hashString(path, StandardCharsets.UTF_8).asLong();
+    }
+
+    /** Packs a reference as manifest ordinal (31 bits), snapshot ordinal (30 bits), status. */
+    static long pack(int manifest, int snapshot, int status) {
+        return ((long) manifest << 32) | ((long) snapshot << 2) | status;
+    }
+
+    static int manifestOf(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    static int snapshotOf(long ref) {
+        return (int) ((ref >>> 2) & 0x3FFFFFFFL);
+    }
+
+    static int statusOf(long ref) {
+        return (int) (ref & 0x3L);
+    }
+
+    /** State of one run over a set of snapshots. */
+    private static class Scan {
+        private final int threads;
+
+        private final long maxMemoryBytes;
+
+        private final File tmpDir;
+
+        /** Distinct manifests of the selected snapshots, indexed by manifest ordinal. */
+        private final List<ManifestListReader.ManifestInfo> manifests = new ArrayList<>();
+
+        /** For each manifest ordinal, the selected snapshots (by index) that contain it. */
+        private final List<BitSet> manifestSnapshots = new ArrayList<>();
+
+        private final List<IcebergMetadata.SnapshotInfo> selected;
+
+        /** Snapshot id to ordinal; ordinals follow commit order and 0 means unknown. */
+        private final Map<Long, Integer> snapshotOrdinals = Maps.newHashMap();
+
+        private final List<Long> snapshotIds = new ArrayList<>();
+
+        private final AtomicLong entries = new AtomicLong();
+
+        private int spilledRuns = 0;
+
+        Scan(
+                IcebergMetadata metadata,
+                List<IcebergMetadata.SnapshotInfo> selected,
+                int threads,
+                long maxMemoryBytes,
+                File tmpDir)
+                throws IOException {
+            this.selected = selected;
+            this.threads = threads;
+            this.maxMemoryBytes = maxMemoryBytes;
+            this.tmpDir = tmpDir;
+
+            snapshotIds.add(null);
+            for (IcebergMetadata.SnapshotInfo snapshot : metadata.snapshots()) {
+                snapshotOrdinals.put(snapshot.snapshotId(), snapshotIds.size());
+                snapshotIds.add(snapshot.snapshotId());
+            }
+
+            Map<String, Integer> manifestOrdinals = Maps.newHashMap();
+            for (int i = 0; i < selected.size(); i++) {
+                for (ManifestListReader.ManifestInfo manifest :
+                        ManifestListReader.read(selected.get(i))) {
+                    Integer ordinal = manifestOrdinals.get(manifest.path());
+                    if (ordinal == null) {
+                        ordinal = manifests.size();
+                        manifestOrdinals.put(manifest.path(), ordinal);
+                        manifests.add(manifest);
+                        manifestSnapshots.add(new BitSet());
+                    }
+                    manifestSnapshots.get(ordinal).set(i);
+                }
+            }
+        }
+
+        int run(JsonGenerator generator) throws Exception {
+            Set<Long> candidates = Sets.newHashSet();
+            try (LongPairSorter sorter = new LongPairSorter(maxMemoryBytes, tmpDir)) {
+                scanManifests(null, sorter, null);
+                GroupCollector collector =
+                        new GroupCollector(
+                                (hash, refs, count) -> {
+                                    if (!check(refs, count).isEmpty()) {
+                                        candidates.add(hash);
+                                    }
+                                });
+                sorter.forEachSorted(collector);
+                collector.finish();
+                spilledRuns = sorter.spilledRuns();
+            }
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+
+            // second pass: resolve candidate hashes to paths, dropping hash collisions
+            Map<String, List<Long>> byPath = Maps.newTreeMap();
+            scanManifests(
+                    (path, ref) -> {
+                        synchronized (byPath) {
+                            byPath.computeIfAbsent(path, key -> new ArrayList<>()).add(ref);
+                        }
+                    },
+                    null,
+                    candidates);
+
+            int findings = 0;
+            for (Map.Entry<String, List<Long>> entry : byPath.entrySet()) {
+                long[] refs = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(refs);
+                for (Finding finding : check(refs, refs.length)) {
+                    write(generator, entry.getKey(), finding, refs);
+                    findings += 1;
+                }
+            }
+            return findings;
+        }
+
+        /**
+         * Reads all manifests in parallel. Without candidates every entry goes to the sorter as a
+         * (hash, reference) pair; with candidates only matching entries go to the path sink.
+         */
+        private void scanManifests(PathSink sink, LongPairSorter sorter, Set<Long> candidates)
+                throws Exception {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < manifests.size(); i++) {
+                int ordinal = i;
+                tasks.add(
+                        () -> {
+                            scanManifest(ordinal, sink, sorter, candidates);
+                            return null;
+                        });
+            }
+            Util.runInParallel(tasks, threads);
+        }
+
+        private void scanManifest(
+                int ordinal, PathSink sink, LongPairSorter sorter, Set<Long> candidates)
+                throws IOException {
+            ManifestListReader.ManifestInfo manifest = manifests.get(ordinal);
+            long[] batch = new long[2 * BATCH_SIZE];
+            int count = 0;
+            long read = 0;
+            try (DataFileStream<GenericRecord> stream =
+                    ManifestEntries.openProjected(manifest.path(), "file_path")) {
+                GenericRecord entry = null;
+                while (stream.hasNext()) {
+                    entry = stream.next(entry);
+                    read += 1;
+                    String path = ManifestEntries.filePath(ManifestEntries.dataFile(entry));
+                    long hash = hash(path);
+                    if (candidates != null && !candidates.contains(hash)) {
+                        continue;
+                    }
+                    // v2 entries inherit the snapshot id of the manifest that added them
+                    Long snapshotId = ManifestEntries.snapshotId(entry);
+                    if (snapshotId == null) {
+                        snapshotId = manifest.addedSnapshotId();
+                    }
+                    Integer snapshot = snapshotId == null ? null : snapshotOrdinals.get(snapshotId);
+                    long ref =
+                            pack(
+                                    ordinal,
+                                    snapshot == null ? 0 : snapshot,
+                                    ManifestEntries.status(entry));
+                    if (candidates != null) {
+                        sink.accept(path, ref);
+                    } else {
+                        batch[2 * count] = hash;
+                        batch[2 * count + 1] = ref;
+                        count += 1;
+                        if (count == BATCH_SIZE) {
+                            sorter.addAll(batch, count);
+                            count = 0;
+                        }
+                    }
+                }
+            }
+            if (sorter != null && count > 0) {
+                sorter.addAll(batch, count);
+            }
+            if (candidates == null) {
+                entries.addAndGet(read);
+            }
+        }
+
+        /**
+         * Returns the problems of the references of one file path. The references are ordered by
+         * the snapshot that wrote them and visited newest first in a single pass, which carries the
+         * selected snapshots holding the live entries and the later deletes seen so far.
+         */
+        private List<Finding> check(long[] refs, int count) {
+            List<Finding> findings = Lists.newArrayList();
+            if (count < 2) {
+                return findings;
+            }
+
+            // snapshot ordinal, then deletes after live entries of the same snapshot, then index
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                long deleted = statusOf(refs[i]) == ManifestEntries.STATUS_DELETED ? 1 : 0;
+                order[i] = ((long) snapshotOf(refs[i]) << 33) | (deleted << 32) | i;
+            }
+            Arrays.sort(order);
+
+            BitSet liveIn = new BitSet();
+            BitSet deletedLaterIn = new BitSet();
+            BitSet duplicateIn = new BitSet();
+            BitSet deletedWhileLiveIn = new BitSet();
+            int added = 0;
+            int deleted = 0;
+            int lastAdded = -1;
+            int lastDeleted = -1;
+            for (int k = count - 1; k >= 0; k--) {
+                long ref = refs[(int) order[k]];
+                int snapshot = snapshotOf(ref);
+                BitSet in = manifestSnapshots.get(manifestOf(ref));
+                if (statusOf(ref) == ManifestEntries.STATUS_DELETED) {
+                    if (snapshot != 0) {
+                        deletedLaterIn.or(in);
+                    }
+                    if (snapshot != lastDeleted) {
+                        deleted += 1;
+                        lastDeleted = snapshot;
+                    }
+                    continue;
+                }
+                if (statusOf(ref) == ManifestEntries.STATUS_ADDED && snapshot != lastAdded) {
+                    added += 1;
+                    lastAdded = snapshot;
+                }
+                // still referenced by a snapshot that already saw the file deleted
+                if (snapshot != 0) {
+                    deletedWhileLiveIn.or(both(in, deletedLaterIn));
+                }
+                duplicateIn.or(both(in, liveIn));
+                liveIn.or(in);
+            }
+
+            if (!duplicateIn.isEmpty()) {
+                findings.add(new Finding("duplicate", duplicateIn));
+            }
+            if (!deletedWhileLiveIn.isEmpty()) {
+                findings.add(new Finding("live-after-delete", deletedWhileLiveIn));
+            }
+            if (added > deleted + 1) {
+                findings.add(new Finding("added-multiple-times", new BitSet()));
+            }
+            return findings;
+        }
+
+        /** The selected snapshots in both sets. */
+        private static BitSet both(BitSet snapshots1, BitSet snapshots2) {
+            BitSet both = (BitSet) snapshots1.clone();
+            both.and(snapshots2);
+            return both;
+        }
+
+        private void write(JsonGenerator generator, String path, Finding finding, long[] refs)
+                throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("finding", finding.kind);
+            generator.writeStringField("file_path", path);
+            if (!finding.snapshots.isEmpty()) {
+                generator.writeNumberField("snapshot_count", finding.snapshots.cardinality());
+                generator.writeArrayFieldStart("snapshot_ids");
+                int written = 0;
+                for (int i = finding.snapshots.nextSetBit(0);
+                        i >= 0 && written < MAX_REPORTED_SNAPSHOTS;
+                        i = finding.snapshots.nextSetBit(i + 1), written++) {
+                    generator.writeNumber(selected.get(i).snapshotId());
+                }
+                generator.writeEndArray();
+            }
+            generator.writeArrayFieldStart("entries");
+            for (long ref : refs) {
+                generator.writeStartObject();
+                generator.writeStringField("manifest", manifests.get(manifestOf(ref)).path());
+                generator.writeStringField("status", STATUS_NAMES[statusOf(ref)]);
+                Long snapshotId = snapshotIds.get(snapshotOf(ref));
+                if (snapshotId != null) {
+                    generator.writeNumberField("snapshot_id", snapshotId);
+                } else {
+                    generator.writeNullField("snapshot_id");
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private interface PathSink {
+        void accept(String path, long ref);
+    }
+
+    private interface GroupSink {
+        void accept(long hash, long[] refs, int count);
+    }
+
+    /** Collects consecutive pairs with the same hash into groups. */
+    private static class GroupCollector implements LongPairSorter.PairConsumer {
+        private final GroupSink sink;
+
+        private long[] refs = new long[16];
+
+        private int count = 0;
+
+        private long hash;
+
+        GroupCollector(GroupSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(long key, long value) {
+            if (count > 0 && key != hash) {
+                finish();
+            }
+            hash = key;
+            if (count == refs.length) {
+                refs = Arrays.copyOf(refs, count * 2);
+            }
+            refs[count++] = value;
+        }
+
+        void finish() {
+            if (count > 0) {
+                sink.accept(hash, refs, count);
+            }
+            count = 0;
+        }
+    }
+
+    private static class Finding {
+        private final String kind;
+
+        private final BitSet snapshots;
+
+        Finding(String kind, BitSet snapshots) {
+            this.kind = kind;
+            this.snapshots = snapshots;
+        }
+    }
+}
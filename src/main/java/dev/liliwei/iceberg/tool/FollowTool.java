@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumWriter;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Follows a table as it is committed to and streams the manifest entries added or deleted by
+ * every new snapshot as JSON lines.
+ *
+ * <p>Local metadata directories are watched with a {@link WatchService}; other filesystems are
+ * listed through Hadoop every poll interval. The metadata file is only read when a newer version
+ * appears. Of every new snapshot only the manifests it wrote are read, and of those only the
+ * entries it added or deleted are written, with the same encoding as manifest2json.
+ *
+ * <p>The checkpoint records the last snapshot written completely and the number of manifests
+ * written of the next one. It is replaced atomically after every manifest, once its entries were
+ * flushed, so a restart neither skips nor repeats manifests; only the entries of a manifest that
+ * was interrupted are written again.
+ */
+public class FollowTool implements Tool {
+    private JsonGenerator generator;
+
+    private FileSystem fs;
+
+    private java.nio.file.Path checkpointFile;
+
+    private Checkpoint checkpoint;
+
+    private long snapshots = 0;
+
+    private long entries = 0;
+
+    @Override
+    public String getName() {
+        return "follow";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Streams the manifest entries of new snapshots as a table is committed to.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> intervalOption =
+                optionParser
+                        .accepts(
+                                "poll-interval-ms",
+                                "Interval between listings of the metadata directory.")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(5000L);
+        OptionSpec<String> checkpointOption =
+                optionParser
+                        .accepts("checkpoint", "Local file to resume from and to record progress.")
+                        .withRequiredArg()
+                        .describedAs("file");
+        OptionSpec<Void> beginningOption =
+                optionParser.accepts(
+                        "from-beginning",
+                        "Without a checkpoint, starts from the oldest snapshot instead of after"
+                                + " the current one.");
+        OptionSpec<Void> onceOption =
+                optionParser.accepts("once", "Writes the pending snapshots and exits.");
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        long interval = intervalOption.value(optionSet);
+        if (nargs.size() != 1 || interval <= 0) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        Path dir = new Path(nargs.get(0));
+        this.fs = dir.getFileSystem(Util.conf());
+        Path metadataDir = new Path(dir, CrawlTool.METADATA_DIR);
+        if (!fs.exists(metadataDir)) {
+            metadataDir = dir;
+        }
+        this.checkpointFile =
+                optionSet.has(checkpointOption)
+                        ? Paths.get(checkpointOption.value(optionSet))
+                        : null;
+        this.checkpoint =
+                checkpointFile != null && Files.exists(checkpointFile)
+                        ? Checkpoint.read(checkpointFile)
+                        : null;
+        boolean fromBeginning = optionSet.has(beginningOption);
+
+        this.generator = Util.jsonLines(out);
+
+        try (WatchService watcher = watch(metadataDir)) {
+            Path followed = null;
+            while (true) {
+                Path latest = latestMetadataFile(metadataDir);
+                if (latest != null && !latest.equals(followed)) {
+                    try {
+                        catchUp(IcebergMetadata.read(latest.toString()), fromBeginning);
+                        followed = latest;
+                    } catch (IOException | RuntimeException e) {
+                        // a metadata file still being written is read again on the next wake
+                        err.println("Could not follow " + latest + ": " + e);
+                        if (optionSet.has(onceOption)) {
+                            return 1;
+                        }
+                    }
+                }
+                if (optionSet.has(onceOption)) {
+                    break;
+                }
+                await(watcher, interval);
+            }
+        } finally {
+            generator.flush();
+        }
+        err.println(String.format("Followed %d snapshots, %d entries", snapshots, entries));
+        return 0;
+    }
+
+    /** Returns a watcher of a local metadata directory, or null to poll. */
+    private WatchService watch(Path metadataDir) throws IOException {
+        if (!"file".equals(fs.makeQualified(metadataDir).toUri().getScheme())) {
+            return null;
+        }
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        Paths.get(fs.makeQualified(metadataDir).toUri())
+                .register(
+                        watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+        return watcher;
+    }
+
+    /** Waits for a change of the metadata directory, or at most one poll interval. */
+    private static void await(WatchService watcher, long interval) throws InterruptedException {
+        if (watcher == null) {
+            Thread.sleep(interval);
+            return;
+        }
+        WatchKey key = watcher.poll(interval, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /** Picks the metadata file named by version-hint.text, or else the highest version. */
+    private Path latestMetadataFile(Path metadataDir) throws IOException {
+        FileStatus[] files = fs.listStatus(metadataDir);
+        for (FileStatus file : files) {
+            if (file.getPath().getName().equals(CrawlTool.VERSION_HINT)) {
+                String version;
+                try (BufferedReader reader =
+                        new BufferedReader(
+                                new InputStreamReader(
+                                        fs.open(file.getPath()), StandardCharsets.UTF_8))) {
+                    version = reader.readLine();
+                }
+                if (version != null) {
+                    Path hinted =
+                            new Path(
+                                    metadataDir,
+                                    "v" + version.trim() + CrawlTool.METADATA_SUFFIX);
+                    if (fs.exists(hinted)) {
+                        return hinted;
+                    }
+                }
+            }
+        }
+        FileStatus latest = CrawlTool.latestVersion(files);
+        return latest == null ? null : latest.getPath();
+    }
+
+    /** Writes the snapshots committed after the checkpoint, oldest first. */
+    private void catchUp(IcebergMetadata metadata, boolean fromBeginning) throws IOException {
+        IcebergMetadata.SnapshotInfo current = metadata.currentSnapshot();
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint();
+            if (!fromBeginning && current != null) {
+                checkpoint.complete(current);
+            }
+            saveCheckpoint();
+        }
+
+        // the ancestors of the checkpoint are known, which also stops at a rolled back table
+        Set<Long> seen = new HashSet<>();
+        for (IcebergMetadata.SnapshotInfo s = snapshot(metadata, checkpoint.snapshotId);
+                s != null;
+                s = snapshot(metadata, s.parentId())) {
+            seen.add(s.snapshotId());
+        }
+        List<IcebergMetadata.SnapshotInfo> pending = new ArrayList<>();
+        for (IcebergMetadata.SnapshotInfo s = current;
+                s != null
+                        && !seen.contains(s.snapshotId())
+                        && s.timestampMs() > checkpoint.timestampMs;
+                s = snapshot(metadata, s.parentId())) {
+            pending.add(s);
+        }
+        Collections.reverse(pending);
+        for (IcebergMetadata.SnapshotInfo snapshot : pending) {
+            follow(metadata, snapshot);
+        }
+    }
+
+    private static IcebergMetadata.SnapshotInfo snapshot(IcebergMetadata metadata, Long id) {
+        return id == null ? null : metadata.snapshot(id);
+    }
+
+    private void follow(IcebergMetadata metadata, IcebergMetadata.SnapshotInfo snapshot)
+            throws IOException {
+        List<ManifestListReader.ManifestInfo> added = addedManifests(metadata, snapshot);
+        int done =
+                checkpoint.pendingSnapshotId != null
+                                && checkpoint.pendingSnapshotId == snapshot.snapshotId()
+                        ? checkpoint.manifestsDone
+                        : 0;
+        if (done == 0) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "snapshot");
+            generator.writeNumberField("snapshot_id", snapshot.snapshotId());
+            generator.writeNumberField("sequence_number", snapshot.sequenceNumber());
+            generator.writeNumberField("timestamp_ms", snapshot.timestampMs());
+            generator.writeStringField("operation", snapshot.operation());
+            generator.writeNumberField("manifests", added.size());
+            generator.writeEndObject();
+        }
+        for (int i = done; i < added.size(); i++) {
+            writeEntries(metadata, snapshot, added.get(i).path());
+            generator.flush();
+            checkpoint.progress(snapshot, i + 1);
+            saveCheckpoint();
+        }
+        generator.flush();
+        checkpoint.complete(snapshot);
+        saveCheckpoint();
+        snapshots += 1;
+    }
+
+    /**
+     * Returns the manifests written by a snapshot. Manifests without the id of the snapshot that
+     * added them, listed inline by format v1 tables, are new if the parent does not list them.
+     */
+    private static List<ManifestListReader.ManifestInfo> addedManifests(
+            IcebergMetadata metadata, IcebergMetadata.SnapshotInfo snapshot) throws IOException {
+        Set<String> parentManifests = null;
+        List<ManifestListReader.ManifestInfo> added = new ArrayList<>();
+        for (ManifestListReader.ManifestInfo manifest : ManifestListReader.read(snapshot)) {
+            if (manifest.addedSnapshotId() != null) {
+                if (manifest.addedSnapshotId() == snapshot.snapshotId()) {
+                    added.add(manifest);
+                }
+                continue;
+            }
+            if (parentManifests == null) {
+                parentManifests = new HashSet<>();
+                IcebergMetadata.SnapshotInfo parent = snapshot(metadata, snapshot.parentId());
+                if (parent != null) {
+                    for (ManifestListReader.ManifestInfo m : ManifestListReader.read(parent)) {
+                        parentManifests.add(m.path());
+                    }
+                }
+            }
+            if (!parentManifests.contains(manifest.path())) {
+                added.add(manifest);
+            }
+        }
+        return added;
+    }
+
+    private void writeEntries(
+            IcebergMetadata metadata, IcebergMetadata.SnapshotInfo snapshot, String manifest)
+            throws IOException {
+        try (DataFileStream<GenericRecord> stream = Util.openAvroFile(manifest)) {
+            Schema schema = stream.getSchema();
+            DatumWriter<Object> writer = new IcebergDatumWriter<>(schema, metadata.fieldTypes());
+            IcebergEncoder encoder = new IcebergEncoder(schema, generator);
+            for (GenericRecord entry : stream) {
+                Long entrySnapshotId = ManifestEntries.snapshotId(entry);
+                if (ManifestEntries.status(entry) == ManifestEntries.STATUS_EXISTING
+                        || (entrySnapshotId != null
+                                && entrySnapshotId != snapshot.snapshotId())) {
+                    continue;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("type", "entry");
+                generator.writeNumberField("snapshot_id", snapshot.snapshotId());
+                generator.writeStringField("manifest", manifest);
+                generator.writeFieldName("entry");
+                writer.write(entry, encoder);
+                encoder.flush();
+                generator.writeEndObject();
+                entries += 1;
+            }
+        }
+    }
+
+    private void saveCheckpoint() throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        Util.writeAtomically(checkpointFile, checkpoint.toJson());
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "follow [--poll-interval-ms=N] [--checkpoint=file] [--from-beginning] [--once]"
+                        + " table-or-metadata-dir");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println(
+                "Writes a line per snapshot followed by a line per added or deleted manifest"
+                        + " entry.");
+    }
+
+    /** The progress of a follower. */
+    static class Checkpoint {
+        /** The last snapshot written completely, or null. */
+        Long snapshotId;
+
+        long timestampMs = Long.MIN_VALUE;
+
+        /** The snapshot being written, or null. */
+        Long pendingSnapshotId;
+
+        int manifestsDone = 0;
+
+        void complete(IcebergMetadata.SnapshotInfo snapshot) {
+            snapshotId = snapshot.snapshotId();
+            timestampMs = snapshot.timestampMs();
+            pendingSnapshotId = null;
+            manifestsDone = 0;
+        }
+
+        void progress(IcebergMetadata.SnapshotInfo snapshot, int manifests) {
+            pendingSnapshotId = snapshot.snapshotId();
+            manifestsDone = manifests;
+        }
+
+        String toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("snapshot_id", snapshotId);
+            json.addProperty("timestamp_ms", timestampMs);
+            json.addProperty("pending_snapshot_id", pendingSnapshotId);
+            json.addProperty("manifests_done", manifestsDone);
+            return json.toString();
+        }
+
+        static Checkpoint read(java.nio.file.Path file) throws IOException {
+            JsonObject json =
+                    JsonParser.parseString(
+                                    new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+                            .getAsJsonObject();
+            Checkpoint checkpoint = new Checkpoint();
+            if (json.has("snapshot_id") && !json.get("snapshot_id").isJsonNull()) {
+                checkpoint.snapshotId = json.get("snapshot_id").getAsLong();
+            }
+            checkpoint.timestampMs = json.get("timestamp_ms").getAsLong();
+            if (json.has("pending_snapshot_id") && !json.get("pending_snapshot_id").isJsonNull()) {
+                checkpoint.pendingSnapshotId = json.get("pending_snapshot_id").getAsLong();
+                checkpoint.manifestsDone = json.get("manifests_done").getAsInt();
+            }
+            return checkpoint;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Reports the live files of many snapshots, e.g. of every snapshot of the last days, at the cost
+ * of the distinct manifests rather than of the snapshots times their manifests.
+ *
+ * <p>Consecutive snapshots share most of their manifests, and a manifest never changes once
+ * written. Every manifest is therefore decoded into a small {@link ManifestSummary} once and kept
+ * in a bounded cache keyed by its path, and the report of a snapshot adds up the summaries of its
+ * manifests. Snapshots are visited oldest first, so the manifests a snapshot inherits from its
+ * parent are the most recently used ones, and a cache larger than the manifests of one snapshot
+ * decodes each distinct manifest exactly once.
+ *
+ * <p>Snapshots are processed in windows of {@link #WINDOW} consecutive snapshots, so that only the
+ * manifest lists of one window are held in memory. The manifest lists of a window are read in
+ * parallel, and the manifests of the window missing from the cache are decoded together, each of
+ * them once, on a single pool shared by all windows.
+ */
+public class HistoryScanTool implements Tool {
+    /** Number of snapshots whose manifest lists are read and decoded together. */
+    static final int WINDOW = 64;
+
+    @Override
+    public String getName() {
+        return "history-scan";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Summarizes many snapshots, decoding each distinct manifest only once.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Integer> daysOption =
+                optionParser
+                        .accepts(
+                                "days",
+                                "Scans the snapshots committed in the last N days (default is"
+                                        + " every snapshot).")
+                        .withRequiredArg()
+                        .ofType(Integer.class);
+        OptionSpec<Integer> cacheOption =
+                optionParser
+                        .accepts("cache-size", "Number of manifest summaries kept.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(100_000);
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests decoded in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 1
+                || cacheOption.value(optionSet) <= 0
+                || (optionSet.has(daysOption) && daysOption.value(optionSet) < 0)) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        long since =
+                optionSet.has(daysOption)
+                        ? System.currentTimeMillis()
+                                - TimeUnit.DAYS.toMillis(daysOption.value(optionSet))
+                        : Long.MIN_VALUE;
+        List<IcebergMetadata.SnapshotInfo> selected = new ArrayList<>();
+        for (IcebergMetadata.SnapshotInfo snapshot : metadata.snapshots()) {
+            if (snapshot.timestampMs() >= since) {
+                selected.add(snapshot);
+            }
+        }
+
+        long start = System.nanoTime();
+        Cache<String, ManifestSummary> cache =
+                CacheBuilder.newBuilder().maximumSize(cacheOption.value(optionSet)).build();
+        AtomicLong decoded = new AtomicLong();
+        JsonGenerator generator = Util.jsonLines(out);
+        long references = 0;
+        ExecutorService pool = Util.newPool(Math.max(1, threadsOption.value(optionSet)), "worker");
+        try {
+            for (int from = 0; from < selected.size(); from += WINDOW) {
+                List<IcebergMetadata.SnapshotInfo> window =
+                        selected.subList(from, Math.min(from + WINDOW, selected.size()));
+                references += scanWindow(window, cache, decoded, pool, generator);
+                generator.flush();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Scanned %d snapshots referencing %d manifests, decoded %d distinct"
+                                + " manifests in %.1f ms",
+                        selected.size(),
+                        references,
+                        decoded.get(),
+                        (System.nanoTime() - start) / 1e6));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println("history-scan [--days=N] [--cache-size=N] [--threads=N] metadata-json-file");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println(
+                "One line is printed per snapshot, oldest first, with the live files of the"
+                        + " snapshot and the files its own manifests added and removed.");
+    }
+
+    /**
+     * Reports the snapshots of one window and returns the number of manifests they reference.
+     * The summaries decoded for the window are kept until its end, so that a cache smaller than
+     * the window's manifests never decodes one twice within it.
+     */
+    private static long scanWindow(
+            List<IcebergMetadata.SnapshotInfo> window,
+            Cache<String, ManifestSummary> cache,
+            AtomicLong decoded,
+            ExecutorService pool,
+            JsonGenerator generator)
+            throws Exception {
+        List<Callable<List<ManifestListReader.ManifestInfo>>> listTasks = new ArrayList<>();
+        for (IcebergMetadata.SnapshotInfo snapshot : window) {
+            listTasks.add(() -> ManifestListReader.read(snapshot));
+        }
+        List<List<ManifestListReader.ManifestInfo>> manifestLists =
+                Util.runInParallel(listTasks, pool);
+
+        // a miss is decoded once for the window and counted for the first snapshot naming it
+        Map<String, ManifestSummary> summaries = new HashMap<>();
+        Map<String, ManifestListReader.ManifestInfo> misses = new LinkedHashMap<>();
+        int[] decodedPerSnapshot = new int[window.size()];
+        for (int i = 0; i < window.size(); i++) {
+            for (ManifestListReader.ManifestInfo manifest : manifestLists.get(i)) {
+                String path = manifest.path();
+                if (summaries.containsKey(path) || misses.containsKey(path)) {
+                    continue;
+                }
+                ManifestSummary summary = cache.getIfPresent(path);
+                if (summary != null) {
+                    summaries.put(path, summary);
+                } else {
+                    misses.put(path, manifest);
+                    decodedPerSnapshot[i] += 1;
+                }
+            }
+        }
+        List<Callable<ManifestSummary>> decodeTasks = new ArrayList<>(misses.size());
+        for (ManifestListReader.ManifestInfo manifest : misses.values()) {
+            decodeTasks.add(() -> ManifestSummary.read(manifest));
+        }
+        Iterator<ManifestSummary> decodedSummaries =
+                Util.runInParallel(decodeTasks, pool).iterator();
+        for (String path : misses.keySet()) {
+            ManifestSummary summary = decodedSummaries.next();
+            summaries.put(path, summary);
+            cache.put(path, summary);
+        }
+        decoded.addAndGet(misses.size());
+
+        long references = 0;
+        for (int i = 0; i < window.size(); i++) {
+            IcebergMetadata.SnapshotInfo snapshot = window.get(i);
+            List<ManifestListReader.ManifestInfo> manifests = manifestLists.get(i);
+            Totals totals = new Totals(snapshot.snapshotId());
+            for (ManifestListReader.ManifestInfo manifest : manifests) {
+                totals.add(summaries.get(manifest.path()));
+            }
+            references += manifests.size();
+            writeSnapshot(snapshot, manifests.size(), decodedPerSnapshot[i], totals, generator);
+        }
+        return references;
+    }
+
+    private static void writeSnapshot(
+            IcebergMetadata.SnapshotInfo snapshot,
+            int manifests,
+            long decoded,
+            Totals totals,
+            JsonGenerator generator)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("snapshot_id", snapshot.snapshotId());
+        generator.writeNumberField("timestamp_ms", snapshot.timestampMs());
+        if (snapshot.operation() != null) {
+            generator.writeStringField("operation", snapshot.operation());
+        }
+        generator.writeNumberField("manifests", manifests);
+        generator.writeNumberField("decoded_manifests", decoded);
+        generator.writeNumberField("data_files", totals.dataFiles);
+        generator.writeNumberField("data_records", totals.dataRecords);
+        generator.writeNumberField("data_bytes", totals.dataBytes);
+        generator.writeNumberField("delete_files", totals.deleteFiles);
+        generator.writeNumberField("delete_records", totals.deleteRecords);
+        generator.writeNumberField("delete_bytes", totals.deleteBytes);
+        generator.writeNumberField("added_files", totals.addedFiles);
+        generator.writeNumberField("added_bytes", totals.addedBytes);
+        generator.writeNumberField("removed_files", totals.removedFiles);
+        generator.writeEndObject();
+    }
+
+    /**
+     * The totals of one manifest. ADDED and DELETED entries only occur in the manifests written
+     * by the snapshot that added or removed the files, so they are kept per manifest along with
+     * that snapshot.
+     */
+    private static class ManifestSummary {
+        private Long snapshotId;
+
+        private long dataFiles;
+
+        private long dataRecords;
+
+        private long dataBytes;
+
+        private long deleteFiles;
+
+        private long deleteRecords;
+
+        private long deleteBytes;
+
+        private long addedFiles;
+
+        private long addedBytes;
+
+        private long removedFiles;
+
+        static ManifestSummary read(ManifestListReader.ManifestInfo manifest)
+                throws IOException {
+            ManifestSummary summary = new ManifestSummary();
+            summary.snapshotId = manifest.addedSnapshotId();
+            try (DataFileStream<GenericRecord> stream =
+                    ManifestEntries.openProjected(
+                            manifest.path(), "content", "record_count", "file_size_in_bytes")) {
+                GenericRecord entry = null;
+                while (stream.hasNext()) {
+                    entry = stream.next(entry);
+                    summary.add(entry);
+                }
+            }
+            return summary;
+        }
+
+        private void add(GenericRecord entry) {
+            int status = ManifestEntries.status(entry);
+            GenericRecord dataFile = ManifestEntries.dataFile(entry);
+            if (status != ManifestEntries.STATUS_EXISTING && snapshotId == null) {
+                // inline manifests of format v1 snapshots have no manifest list to inherit from
+                snapshotId = ManifestEntries.snapshotId(entry);
+            }
+            if (status == ManifestEntries.STATUS_DELETED) {
+                removedFiles += 1;
+                return;
+            }
+            long records = ManifestEntries.recordCount(dataFile);
+            long bytes = ManifestEntries.fileSizeInBytes(dataFile);
+            if (ManifestEntries.content(dataFile) == ManifestEntries.CONTENT_DATA) {
+                dataFiles += 1;
+                dataRecords += records;
+                dataBytes += bytes;
+            } else {
+                deleteFiles += 1;
+                deleteRecords += records;
+                deleteBytes += bytes;
+            }
+            if (status == ManifestEntries.STATUS_ADDED) {
+                addedFiles += 1;
+                addedBytes += bytes;
+            }
+        }
+    }
+
+    /** The totals of one snapshot, summed over the summaries of its manifests. */
+    private static class Totals {
+        private final long snapshotId;
+
+        private long dataFiles;
+
+        private long dataRecords;
+
+        private long dataBytes;
+
+        private long deleteFiles;
+
+        private long deleteRecords;
+
+        private long deleteBytes;
+
+        private long addedFiles;
+
+        private long addedBytes;
+
+        private long removedFiles;
+
+        Totals(long snapshotId) {
+            this.snapshotId = snapshotId;
+        }
+
+        void add(ManifestSummary summary) {
+            dataFiles += summary.dataFiles;
+            dataRecords += summary.dataRecords;
+            dataBytes += summary.dataBytes;
+            deleteFiles += summary.deleteFiles;
+            deleteRecords += summary.deleteRecords;
+            deleteBytes += summary.deleteBytes;
+            if (summary.snapshotId != null && summary.snapshotId == snapshotId) {
+                addedFiles += summary.addedFiles;
+                addedBytes += summary.addedBytes;
+                removedFiles += summary.removedFiles;
+            }
+        }
+    }
+}
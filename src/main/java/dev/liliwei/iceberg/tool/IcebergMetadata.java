@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/** Parsed view of an Iceberg table metadata.json file: current schema types and snapshots. */
+public class IcebergMetadata {
+    /** Parsed metadata files by path, or null if every read parses the file. */
+    private static volatile Cache<String, IcebergMetadata> cache;
+
+    private final int formatVersion;
+
+    private final String location;
+
+    private final Long currentSnapshotId;
+
+    private final Map<Integer, String> fieldTypes;
+
+    private final Map<Integer, String> fieldNames;
+
+    private final List<SnapshotInfo> snapshots;
+
+    private IcebergMetadata(
+            int formatVersion,
+            String location,
+            Long currentSnapshotId,
+            Map<Integer, String> fieldTypes,
+            Map<Integer, String> fieldNames,
+            List<SnapshotInfo> snapshots) {
+        this.formatVersion = formatVersion;
+        this.location = location;
+        this.currentSnapshotId = currentSnapshotId;
+        this.fieldTypes = fieldTypes;
+        this.fieldNames = fieldNames;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Reads a metadata.json file using the owning filesystem.
+     *
+     * @param filename The metadata file to read
+     * @throws IOException
+     */
+    public static IcebergMetadata read(String filename) throws IOException {
+        Cache<String, IcebergMetadata> parsed = cache;
+        if (parsed == null) {
+            return readFile(filename);
+        }
+        try {
+            return parsed.get(filename, () -> readFile(filename));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Makes {@link #read} keep up to the given number of parsed metadata files, so that several
+     * tools run in one JVM parse a file only once. Metadata files are never rewritten in place,
+     * every table version is written to a new file.
+     *
+     * @param maximumSize The maximum number of parsed files kept
+     */
+    static synchronized void enableCache(long maximumSize) {
+        if (cache == null) {
+            cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        }
+    }
+
+    private static IcebergMetadata readFile(String filename) throws IOException {
+        InputStream stream = Util.openFromFS(filename);
+        try {
+            return parse(
+                    new Gson()
+                            .newJsonReader(
+                                    new BufferedReader(
+                                            new InputStreamReader(
+                                                    stream, StandardCharsets.UTF_8))));
+        } finally {
+            Util.close(stream);
+        }
+    }
+
+    public static IcebergMetadata parse(JsonReader jsonReader) {
+        JsonObject root = JsonParser.parseReader(jsonReader).getAsJsonObject();
+
+        int formatVersion = root.has("format-version") ? root.get("format-version").getAsInt() : 1;
+        String location = root.has("location") ? root.get("location").getAsString() : null;
+        Long currentSnapshotId = null;
+        if (root.has("current-snapshot-id") && !root.get("current-snapshot-id").isJsonNull()) {
+            currentSnapshotId = root.get("current-snapshot-id").getAsLong();
+            // older writers use -1 when the table has no snapshot
+            if (currentSnapshotId == -1L) {
+                currentSnapshotId = null;
+            }
+        }
+
+        List<SnapshotInfo> snapshots = Lists.newArrayList();
+        JsonArray snapshotArray = root.getAsJsonArray("snapshots");
+        if (snapshotArray != null) {
+            for (JsonElement element : snapshotArray) {
+                snapshots.add(SnapshotInfo.parse(element.getAsJsonObject()));
+            }
+        }
+        snapshots.sort(Comparator.comparingLong(SnapshotInfo::timestampMs));
+
+        return new IcebergMetadata(
+                formatVersion,
+                location,
+                currentSnapshotId,
+                Collections.unmodifiableMap(parseFieldTypes(root)),
+                Collections.unmodifiableMap(parseFieldNames(root)),
+                Collections.unmodifiableList(snapshots));
+    }
+
+    /**
+     * Returns the field id to primitive type name mapping of the current table schema. Nested
+     * struct, list and map fields are skipped.
+     */
+    static Map<Integer, String> parseFieldTypes(JsonObject root) {
+        Map<Integer, String> fieldMap = Maps.newHashMap();
+        for (JsonElement fieldJson : currentSchema(root).getAsJsonArray("fields")) {
+            JsonObject field = fieldJson.getAsJsonObject();
+            if (field.get("type").isJsonPrimitive()) {
+                fieldMap.put(field.get("id").getAsInt(), field.get("type").getAsString());
+            }
+        }
+        return fieldMap;
+    }
+
+    /** Returns the field id to name mapping of the top-level fields of the current schema. */
+    static Map<Integer, String> parseFieldNames(JsonObject root) {
+        Map<Integer, String> fieldMap = Maps.newLinkedHashMap();
+        for (JsonElement fieldJson : currentSchema(root).getAsJsonArray("fields")) {
+            JsonObject field = fieldJson.getAsJsonObject();
+            fieldMap.put(field.get("id").getAsInt(), field.get("name").getAsString());
+        }
+        return fieldMap;
+    }
+
+    private static JsonObject currentSchema(JsonObject root) {
+        JsonObject schema = root.getAsJsonObject("schema");
+        if (schema == null) {
+            int schemaId = root.get("current-schema-id").getAsInt();
+            for (JsonElement element : root.getAsJsonArray("schemas")) {
+                JsonObject schemaObj = element.getAsJsonObject();
+                if (schemaObj.get("schema-id").getAsInt() == schemaId) {
+                    schema = schemaObj;
+                }
+            }
+        }
+        return schema;
+    }
+
+    public int formatVersion() {
+        return formatVersion;
+    }
+
+    public String location() {
+        return location;
+    }
+
+    public Map<Integer, String> fieldTypes() {
+        return fieldTypes;
+    }
+
+    public Map<Integer, String> fieldNames() {
+        return fieldNames;
+    }
+
+    /** All snapshots still referenced by the metadata, oldest first. */
+    public List<SnapshotInfo> snapshots() {
+        return snapshots;
+    }
+
+    /** Returns the current snapshot, or null if the table has none. */
+    public SnapshotInfo currentSnapshot() {
+        return currentSnapshotId == null ? null : snapshot(currentSnapshotId);
+    }
+
+    /** Returns the snapshot with the given id, or null if it is not in the metadata. */
+    public SnapshotInfo snapshot(long snapshotId) {
+        for (SnapshotInfo snapshot : snapshots) {
+            if (snapshot.snapshotId() == snapshotId) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /** A single entry of the "snapshots" array. */
+    public static class SnapshotInfo {
+        private final long snapshotId;
+
+        private final Long parentId;
+
+        private final long timestampMs;
+
+        private final long sequenceNumber;
+
+        private final Map<String, String> summary;
+
+        private final String manifestList;
+
+        private final List<String> manifests;
+
+        SnapshotInfo(
+                long snapshotId,
+                Long parentId,
+                long timestampMs,
+                long sequenceNumber,
+                Map<String, String> summary,
+                String manifestList,
+                List<String> manifests) {
+            this.snapshotId = snapshotId;
+            this.parentId = parentId;
+            this.timestampMs = timestampMs;
+            this.sequenceNumber = sequenceNumber;
+            this.summary = summary;
+            this.manifestList = manifestList;
+            this.manifests = manifests;
+        }
+
+        static SnapshotInfo parse(JsonObject json) {
+            Map<String, String> summary = Maps.newLinkedHashMap();
+            JsonObject summaryJson = json.getAsJsonObject("summary");
+            if (summaryJson != null) {
+                for (Map.Entry<String, JsonElement> entry : summaryJson.entrySet()) {
+                    summary.put(entry.getKey(), entry.getValue().getAsString());
+                }
+            }
+
+            // format v1 tables may list the manifests inline instead of writing a manifest list
+            List<String> manifests = null;
+            JsonArray manifestArray = json.getAsJsonArray("manifests");
+            if (manifestArray != null) {
+                manifests = Lists.newArrayList();
+                for (JsonElement manifest : manifestArray) {
+                    manifests.add(manifest.getAsString());
+                }
+            }
+
+            return new SnapshotInfo(
+                    json.get("snapshot-id").getAsLong(),
+                    json.has("parent-snapshot-id")
+                            ? json.get("parent-snapshot-id").getAsLong()
+                            : null,
+                    json.get("timestamp-ms").getAsLong(),
+                    json.has("sequence-number") ? json.get("sequence-number").getAsLong() : 0L,
+                    summary,
+                    json.has("manifest-list") ? json.get("manifest-list").getAsString() : null,
+                    manifests);
+        }
+
+        public long snapshotId() {
+            return snapshotId;
+        }
+
+        public Long parentId() {
+            return parentId;
+        }
+
+        public long timestampMs() {
+            return timestampMs;
+        }
+
+        public long sequenceNumber() {
+            return sequenceNumber;
+        }
+
+        /** The snapshot operation, e.g. append or overwrite, or null if not recorded. */
+        public String operation() {
+            return summary.get("operation");
+        }
+
+        public Map<String, String> summary() {
+            return summary;
+        }
+
+        public String manifestList() {
+            return manifestList;
+        }
+
+        /** Inline manifest paths of format v1 snapshots, or null when a manifest list is used. */
+        public List<String> manifests() {
+            return manifests;
+        }
+    }
+}
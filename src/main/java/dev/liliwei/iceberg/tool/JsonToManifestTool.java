@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.iceberg.Files;
+import org.apache.iceberg.ManifestFiles;
+import org.apache.iceberg.ManifestWriter;
+import org.apache.iceberg.PartitionSpec;
+import org.apache.iceberg.TableMetadata;
+import org.apache.iceberg.TableMetadataParser;
+import org.apache.iceberg.hadoop.HadoopFileIO;
+import org.apache.iceberg.types.Conversions;
+import org.apache.iceberg.types.Type;
+import org.apache.iceberg.types.Types;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Converts the JSON written by {@code manifest2json} back into a manifest file.
+ *
+ * <p>The JSON is read with Jackson's streaming parser, guided by the Avro schema of the manifest,
+ * so only one entry is held in memory at a time. The {@code "value:X;type:T"} text that {@code
+ * manifest2json} renders for the column bounds is converted back to Iceberg's binary
+ * representation with {@link Conversions#toByteBuffer}. The schema and file metadata are copied
+ * from a template manifest, or derived from the table metadata by Iceberg's own manifest writer.
+ */
+public class JsonToManifestTool implements Tool {
+    private static final String[] BOUND_FIELDS = {"lower_bounds", "upper_bounds"};
+
+    private static final String VALUE_PREFIX = "value:";
+
+    private static final String TYPE_SEPARATOR = ";type:";
+
+    @Override
+    public String getName() {
+        return "json2manifest";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Converts the JSON of manifest2json back into an Iceberg Manifest Avro data file.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<String> templateOption =
+                optionParser
+                        .accepts("template", "Manifest whose schema and metadata are copied.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<Integer> specOption =
+                optionParser
+                        .accepts(
+                                "spec-id",
+                                "Partition spec of the manifest without --template (default is"
+                                        + " the table's default spec).")
+                        .withRequiredArg()
+                        .ofType(Integer.class);
+        OptionSpec<String> contentOption =
+                optionParser
+                        .accepts("content", "Manifest content without --template: data or deletes.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("data");
+        OptionSpec<String> codecOption =
+                optionParser
+                        .accepts(
+                                "codec",
+                                "Compression codec: null, deflate, snappy, zstandard, bzip2 or"
+                                        + " xz.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("deflate");
+        OptionSpec<String> formatOption =
+                optionParser
+                        .accepts("format", "Input format: json, smile or cbor.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("json");
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        String content = contentOption.value(optionSet);
+        JsonFactory factory = Util.jsonFactory(formatOption.value(optionSet));
+        if (nargs.size() != 3
+                || factory == null
+                || !(content.equals("data") || content.equals("deletes"))) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+        CodecFactory codec;
+        try {
+            codec = CodecFactory.fromString(codecOption.value(optionSet));
+        } catch (AvroRuntimeException e) {
+            err.println("Unknown codec: " + codecOption.value(optionSet));
+            return 1;
+        }
+
+        TableMetadata metadata =
+                TableMetadataParser.read(new HadoopFileIO(Util.conf()), nargs.get(1));
+        Schema schema;
+        Map<String, byte[]> meta = new LinkedHashMap<>();
+        if (optionSet.has(templateOption)) {
+            schema = readTemplate(templateOption.value(optionSet), meta);
+        } else {
+            PartitionSpec spec =
+                    optionSet.has(specOption)
+                            ? metadata.specsById().get(specOption.value(optionSet))
+                            : metadata.spec();
+            if (spec == null) {
+                err.println("Partition spec not found: " + specOption.value(optionSet));
+                return 1;
+            }
+            schema = deriveSchema(metadata.formatVersion(), spec, content.equals("deletes"), meta);
+        }
+
+        Path output = new Path(nargs.get(2));
+        FileSystem fs = output.getFileSystem(Util.conf());
+        if (fs.exists(output)) {
+            throw new FileAlreadyExistsException(output + " already exists");
+        }
+        // written under a hidden name and renamed when complete, so no failure leaves a partial
+        // manifest behind
+        Path tmp = new Path(output.getParent(), "." + output.getName() + ".tmp");
+        Converter converter = new Converter(metadata);
+        long entries = 0;
+        boolean committed = false;
+        try {
+            try (InputStream in = Util.fileOrStdin(nargs.get(0), stdin);
+                    JsonParser parser = factory.createParser(in);
+                    OutputStream os = fs.create(tmp, true);
+                    DataFileWriter<GenericRecord> writer =
+                            new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema))) {
+                writer.setCodec(codec);
+                for (Map.Entry<String, byte[]> item : meta.entrySet()) {
+                    writer.setMeta(item.getKey(), item.getValue());
+                }
+                writer.create(schema, os);
+                // manifest2json writes a JSON array, but a sequence of objects is accepted as well
+                JsonToken token = parser.nextToken();
+                boolean array = token == JsonToken.START_ARRAY;
+                if (array) {
+                    token = parser.nextToken();
+                }
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    writer.append((GenericRecord) converter.read(schema, parser));
+                    entries += 1;
+                    token = parser.nextToken();
+                }
+            } catch (AvroTypeException | IllegalArgumentException | JsonProcessingException e) {
+                err.println("Invalid entry " + (entries + 1) + ": " + e.getMessage());
+                return 1;
+            }
+            if (!fs.rename(tmp, output)) {
+                throw new IOException("Could not rename " + tmp + " to " + output);
+            }
+            committed = true;
+        } finally {
+            if (!committed) {
+                fs.delete(tmp, false);
+            }
+        }
+
+        err.println(
+                String.format(
+                        "Wrote %d entries to %s, dropped %d binary bounds that manifest2json does"
+                                + " not render",
+                        entries, output, converter.droppedBounds));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "json2manifest [--template=M | --spec-id=N --content=data|deletes] [--codec=C]"
+                        + " [--format=F] json-file metadata-json-file output-file");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("A dash ('-') can be given as json-file to use stdin");
+    }
+
+    private static Schema readTemplate(String template, Map<String, byte[]> meta)
+            throws IOException {
+        try (DataFileStream<GenericRecord> stream = Util.openAvroFile(template)) {
+            for (String key : stream.getMetaKeys()) {
+                if (!key.startsWith("avro.")) {
+                    meta.put(key, stream.getMeta(key));
+                }
+            }
+            return stream.getSchema();
+        }
+    }
+
+    /**
+     * Writes an empty manifest with Iceberg's writer for the format version and spec, and returns
+     * its schema and metadata. The entry schema is not public API otherwise.
+     */
+    private static Schema deriveSchema(
+            int formatVersion, PartitionSpec spec, boolean deletes, Map<String, byte[]> meta)
+            throws IOException {
+        File empty = File.createTempFile("manifest-", ".avro");
+        try {
+            if (!empty.delete()) {
+                throw new IOException("Cannot replace temporary file " + empty);
+            }
+            ManifestWriter<?> writer =
+                    deletes
+                            ? ManifestFiles.writeDeleteManifest(
+                                    formatVersion, spec, Files.localOutput(empty), null)
+                            : ManifestFiles.write(
+                                    formatVersion, spec, Files.localOutput(empty), null);
+            writer.close();
+            return readTemplate(empty.getAbsolutePath(), meta);
+        } finally {
+            if (!empty.delete()) {
+                empty.deleteOnExit();
+            }
+        }
+    }
+
+    /** Reads Avro JSON values into generic data, one value at a time. */
+    private static class Converter {
+        private final TableMetadata metadata;
+
+        private long droppedBounds = 0;
+
+        Converter(TableMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        /** Reads the value the parser points at. */
+        Object read(Schema schema, JsonParser parser) throws IOException {
+            JsonToken token = parser.currentToken();
+            switch (schema.getType()) {
+                case RECORD:
+                    return readRecord(schema, parser);
+                case ENUM:
+                    expect(token, JsonToken.VALUE_STRING, schema, parser);
+                    return new GenericData.EnumSymbol(schema, parser.getText());
+                case ARRAY:
+                    expect(token, JsonToken.START_ARRAY, schema, parser);
+                    GenericData.Array<Object> array = new GenericData.Array<>(4, schema);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        array.add(read(schema.getElementType(), parser));
+                    }
+                    return array;
+                case MAP:
+                    expect(token, JsonToken.START_OBJECT, schema, parser);
+                    Map<String, Object> map = new HashMap<>();
+                    while (parser.nextToken() != JsonToken.END_OBJECT) {
+                        String key = parser.getCurrentName();
+                        parser.nextToken();
+                        map.put(key, read(schema.getValueType(), parser));
+                    }
+                    return map;
+                case UNION:
+                    return readUnion(schema, parser);
+                case FIXED:
+                    expect(token, JsonToken.VALUE_STRING, schema, parser);
+                    return new GenericData.Fixed(
+                            schema, parser.getText().getBytes(StandardCharsets.UTF_8));
+                case STRING:
+                    expect(token, JsonToken.VALUE_STRING, schema, parser);
+                    return parser.getText();
+                case BYTES:
+                    expect(token, JsonToken.VALUE_STRING, schema, parser);
+                    return ByteBuffer.wrap(parser.getText().getBytes(StandardCharsets.UTF_8));
+                case INT:
+                    expect(token, JsonToken.VALUE_NUMBER_INT, schema, parser);
+                    return parser.getIntValue();
+                case LONG:
+                    expect(token, JsonToken.VALUE_NUMBER_INT, schema, parser);
+                    return parser.getLongValue();
+                case FLOAT:
+                    return (float) readDouble(schema, parser);
+                case DOUBLE:
+                    return readDouble(schema, parser);
+                case BOOLEAN:
+                    if (token != JsonToken.VALUE_TRUE) {
+                        expect(token, JsonToken.VALUE_FALSE, schema, parser);
+                    }
+                    return parser.getBooleanValue();
+                case NULL:
+                    expect(token, JsonToken.VALUE_NULL, schema, parser);
+                    return null;
+                default:
+                    throw new AvroTypeException("Unsupported schema " + schema);
+            }
+        }
+
+        private GenericRecord readRecord(Schema schema, JsonParser parser) throws IOException {
+            expect(parser.currentToken(), JsonToken.START_OBJECT, schema, parser);
+            List<Schema.Field> fields = schema.getFields();
+            GenericRecord record = new GenericData.Record(schema);
+            boolean[] present = new boolean[fields.size()];
+            int next = 0;
+            while (parser.nextToken() != JsonToken.END_OBJECT) {
+                // manifest2json writes the fields in schema order, which saves the lookup
+                String name = parser.getCurrentName();
+                Schema.Field field =
+                        next < fields.size() && fields.get(next).name().equals(name)
+                                ? fields.get(next)
+                                : schema.getField(name);
+                parser.nextToken();
+                if (field == null) {
+                    // a field of a newer or older manifest version
+                    parser.skipChildren();
+                    continue;
+                }
+                record.put(field.pos(), read(field.schema(), parser));
+                present[field.pos()] = true;
+                next = field.pos() + 1;
+            }
+            for (Schema.Field field : schema.getFields()) {
+                if (present[field.pos()]) {
+                    continue;
+                }
+                if (field.hasDefaultValue()) {
+                    record.put(field.pos(), GenericData.get().getDefaultValue(field));
+                } else if (!isNullable(field.schema())) {
+                    throw new AvroTypeException("Missing required field " + field.name());
+                }
+            }
+            for (String name : BOUND_FIELDS) {
+                Schema.Field field = schema.getField(name);
+                if (field != null && record.get(field.pos()) != null) {
+                    restoreBounds((List<?>) record.get(field.pos()));
+                }
+            }
+            return record;
+        }
+
+        private Object readUnion(Schema schema, JsonParser parser) throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                if (!isNullable(schema)) {
+                    throw new AvroTypeException("Unexpected null for " + schema);
+                }
+                return null;
+            }
+            expect(parser.currentToken(), JsonToken.START_OBJECT, schema, parser);
+            parser.nextToken();
+            String label = parser.getCurrentName();
+            Integer index = schema.getIndexNamed(label);
+            if (index == null) {
+                throw new AvroTypeException("Unknown union branch " + label + " of " + schema);
+            }
+            parser.nextToken();
+            Object value = read(schema.getTypes().get(index), parser);
+            if (parser.nextToken() != JsonToken.END_OBJECT) {
+                throw new AvroTypeException("Expected a single union branch for " + label);
+            }
+            return value;
+        }
+
+        private double readDouble(Schema schema, JsonParser parser) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_STRING) {
+                // NaN and infinities are written as strings
+                return Double.parseDouble(parser.getText());
+            }
+            if (token != JsonToken.VALUE_NUMBER_INT) {
+                expect(token, JsonToken.VALUE_NUMBER_FLOAT, schema, parser);
+            }
+            return parser.getDoubleValue();
+        }
+
+        /**
+         * Replaces the rendered bounds of a key/value array by their binary representation. The
+         * key and value are the first and second field of Iceberg's map entry records.
+         */
+        private void restoreBounds(List<?> bounds) {
+            Iterator<?> iterator = bounds.iterator();
+            while (iterator.hasNext()) {
+                GenericRecord bound = (GenericRecord) iterator.next();
+                int fieldId = ((Number) bound.get(0)).intValue();
+                ByteBuffer value = toBinary(fieldId, text((ByteBuffer) bound.get(1)));
+                if (value == null) {
+                    droppedBounds += 1;
+                    iterator.remove();
+                } else {
+                    bound.put(1, value);
+                }
+            }
+        }
+
+        /**
+         * Converts a bound back to binary. The type written next to the value is preferred over the
+         * table schema, since the column may have been promoted after the manifest was written.
+         * Returns null for binary and fixed values, whose bytes manifest2json does not render.
+         */
+        private ByteBuffer toBinary(int fieldId, String text) {
+            String value = text;
+            Type type = null;
+            int separator = text.lastIndexOf(TYPE_SEPARATOR);
+            if (separator >= 0) {
+                value = text.substring(0, separator);
+                String typeName = text.substring(separator + TYPE_SEPARATOR.length());
+                type = Types.fromPrimitiveString(typeName);
+            }
+            if (value.startsWith(VALUE_PREFIX)) {
+                value = value.substring(VALUE_PREFIX.length());
+            }
+            if (type == null) {
+                type = columnType(fieldId);
+            }
+            switch (type.typeId()) {
+                case BOOLEAN:
+                    if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                        throw new IllegalArgumentException("Not a boolean: '" + value + "'");
+                    }
+                    return Conversions.toByteBuffer(type, Boolean.parseBoolean(value));
+                case INTEGER:
+                case DATE:
+                    return Conversions.toByteBuffer(type, Integer.parseInt(value));
+                case LONG:
+                case TIME:
+                case TIMESTAMP:
+                    return Conversions.toByteBuffer(type, Long.parseLong(value));
+                case FLOAT:
+                    return Conversions.toByteBuffer(type, Float.parseFloat(value));
+                case DOUBLE:
+                    return Conversions.toByteBuffer(type, Double.parseDouble(value));
+                case STRING:
+                    return Conversions.toByteBuffer(type, value);
+                case UUID:
+                    return Conversions.toByteBuffer(type, UUID.fromString(value));
+                case DECIMAL:
+                    return Conversions.toByteBuffer(type, decimal((Types.DecimalType) type, value));
+                default:
+                    return null;
+            }
+        }
+
+        /** Parses a decimal bound at the scale of its type, which stores only unscaled values. */
+        private static BigDecimal decimal(Types.DecimalType type, String value) {
+            try {
+                return new BigDecimal(value).setScale(type.scale(), RoundingMode.UNNECESSARY);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException(
+                        "Decimal bound " + value + " has more than " + type.scale() + " digits"
+                                + " after the point of " + type);
+            }
+        }
+
+        private Type columnType(int fieldId) {
+            for (org.apache.iceberg.Schema schema : metadata.schemas()) {
+                Type type = schema.findType(fieldId);
+                if (type != null) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Bound of unknown column " + fieldId);
+        }
+
+        private static String text(ByteBuffer buffer) {
+            return new String(
+                    buffer.array(),
+                    buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining(),
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean isNullable(Schema schema) {
+        if (schema.getType() == Schema.Type.NULL) {
+            return true;
+        }
+        if (schema.getType() == Schema.Type.UNION) {
+            for (Schema type : schema.getTypes()) {
+                if (type.getType() == Schema.Type.NULL) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected, Schema schema, JsonParser p) {
+        if (actual != expected) {
+            throw new AvroTypeException(
+                    "Expected "
+                            + schema.getType().getName()
+                            + " but found "
+                            + actual
+                            + " at line "
+                            + p.getCurrentLocation().getLineNr());
+        }
+    }
+}
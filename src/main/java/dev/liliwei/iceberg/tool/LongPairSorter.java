@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts (key, value) pairs of longs within a fixed memory budget. Pairs are buffered in a single
+ * interleaved long array; when the budget is exhausted the buffer is sorted and spilled to a
+ * temporary run file. {@link #forEachSorted} merges the runs in passes over a bounded number of
+ * files, whose read buffers are reserved from the budget, so that the open files and the memory
+ * stay bounded however many runs there are.
+ */
+class LongPairSorter implements Closeable {
+    private static final int BYTES_PER_PAIR = 16;
+
+    private static final int MIN_PAIRS = 1024;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private static final int DEFAULT_MERGE_FAN_IN = 64;
+
+    /** Receives the pairs in sorted order. */
+    interface PairConsumer {
+        void accept(long key, long value) throws IOException;
+    }
+
+    private final int maxPairs;
+
+    private final File tmpDir;
+
+    private final int mergeFanIn;
+
+    private final List<File> runs = new ArrayList<>();
+
+    private long[] buffer = new long[2 * MIN_PAIRS];
+
+    private int size = 0;
+
+    private long total = 0;
+
+    private int spilledRuns = 0;
+
+    /**
+     * @param maxMemoryBytes The memory budget of the in-memory buffer
+     * @param tmpDir The directory of spilled runs, or null for the default temporary directory
+     */
+    LongPairSorter(long maxMemoryBytes, File tmpDir) {
+        this(maxMemoryBytes, tmpDir, DEFAULT_MERGE_FAN_IN);
+    }
+
+    /**
+     * @param maxMemoryBytes The memory budget of the in-memory buffer and the merge buffers
+     * @param tmpDir The directory of spilled runs, or null for the default temporary directory
+     * @param mergeFanIn The maximum number of run files merged at once
+     */
+    LongPairSorter(long maxMemoryBytes, File tmpDir, int mergeFanIn) {
+        this.mergeFanIn = Math.max(2, mergeFanIn);
+        // the read buffers of a merge and the buffer of the run it writes
+        long pairBytes = maxMemoryBytes - (this.mergeFanIn + 1L) * IO_BUFFER_SIZE;
+        this.maxPairs = (int) Math.max(MIN_PAIRS, Math.min(pairBytes / BYTES_PER_PAIR, 1 << 29));
+        this.tmpDir = tmpDir;
+    }
+
+    synchronized void add(long key, long value) throws IOException {
+        ensureCapacity();
+        buffer[2 * size] = key;
+        buffer[2 * size + 1] = value;
+        size += 1;
+        total += 1;
+    }
+
+    /** Adds the first {@code count} pairs of an interleaved key/value array. */
+    synchronized void addAll(long[] pairs, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            ensureCapacity();
+            int n = Math.min(count - offset, buffer.length / 2 - size);
+            System.arraycopy(pairs, 2 * offset, buffer, 2 * size, 2 * n);
+            size += n;
+            total += n;
+            offset += n;
+        }
+    }
+
+    /** Number of pairs added so far. */
+    synchronized long size() {
+        return total;
+    }
+
+    /** Number of runs that were spilled to disk. */
+    synchronized int spilledRuns() {
+        return spilledRuns;
+    }
+
+    private void ensureCapacity() throws IOException {
+        if (size < buffer.length / 2) {
+            return;
+        }
+        if (buffer.length / 2 < maxPairs) {
+            // buffer.length is twice the current pair capacity, so this doubles it
+            int pairs = Math.min(maxPairs, buffer.length);
+            buffer = Arrays.copyOf(buffer, 2 * pairs);
+        } else {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        sort(buffer, 0, size);
+        runs.add(writeRun(Collections.singletonList(new MemoryCursor(buffer, size))));
+        spilledRuns += 1;
+        size = 0;
+    }
+
+    /** Merges the cursors into a new run file and closes them. */
+    private File writeRun(List<Cursor> cursors) throws IOException {
+        File run = File.createTempFile("pairs-", ".run", tmpDir);
+        run.deleteOnExit();
+        try (DataOutputStream out =
+                new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE))) {
+            merge(
+                    cursors,
+                    (key, value) -> {
+                        out.writeLong(key);
+                        out.writeLong(value);
+                    });
+        } catch (IOException | RuntimeException e) {
+            delete(run);
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * Passes every pair to the consumer in (key, value) order. Must be called after all pairs
+     * have been added.
+     *
+     * @param consumer The receiver of the sorted pairs
+     * @throws IOException
+     */
+    synchronized void forEachSorted(PairConsumer consumer) throws IOException {
+        sort(buffer, 0, size);
+        if (runs.isEmpty()) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(buffer[2 * i], buffer[2 * i + 1]);
+            }
+            return;
+        }
+
+        // intermediate passes merge the oldest runs until a single pass can take the rest
+        while (runs.size() > mergeFanIn) {
+            List<File> group = new ArrayList<>(runs.subList(0, mergeFanIn));
+            runs.subList(0, mergeFanIn).clear();
+            runs.add(writeRun(open(group)));
+            for (File run : group) {
+                delete(run);
+            }
+        }
+        List<Cursor> cursors = new ArrayList<>();
+        cursors.add(new MemoryCursor(buffer, size));
+        cursors.addAll(open(runs));
+        merge(cursors, consumer);
+    }
+
+    private static List<Cursor> open(List<File> files) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (File file : files) {
+                cursors.add(new RunCursor(file));
+            }
+        } catch (IOException e) {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    /** Passes the pairs of the sorted cursors to the consumer in order and closes them. */
+    private static void merge(List<Cursor> cursors, PairConsumer consumer) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        try {
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                consumer.accept(cursor.key, cursor.value);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static void delete(File run) {
+        if (!run.delete()) {
+            run.deleteOnExit();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (File run : runs) {
+            delete(run);
+        }
+        runs.clear();
+        buffer = new long[0];
+        size = 0;
+    }
+
+    private static int compare(long[] a, int i, long key, long value) {
+        int c = Long.compare(a[2 * i], key);
+        return c != 0 ? c : Long.compare(a[2 * i + 1], value);
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long key = a[2 * i];
+        long value = a[2 * i + 1];
+        a[2 * i] = a[2 * j];
+        a[2 * i + 1] = a[2 * j + 1];
+        a[2 * j] = key;
+        a[2 * j + 1] = value;
+    }
+
+    /** Sorts the pairs with indexes in [from, to) of an interleaved key/value array. */
+    static void sort(long[] a, int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int mid = (from + to) >>> 1;
+            long pivotKey = a[2 * mid];
+            long pivotValue = a[2 * mid + 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compare(a, i, pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(a, j, pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller half to bound the stack depth
+            if (j - from < to - i) {
+                sort(a, from, j + 1);
+                from = i;
+            } else {
+                sort(a, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(a, j - 1, a[2 * j], a[2 * j + 1]) > 0; j--) {
+                swap(a, j, j - 1);
+            }
+        }
+    }
+
+    private abstract static class Cursor implements Comparable<Cursor>, Closeable {
+        long key;
+
+        long value;
+
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public int compareTo(Cursor other) {
+            int c = Long.compare(key, other.key);
+            return c != 0 ? c : Long.compare(value, other.value);
+        }
+
+        @Override
+        public void close() throws IOException {}
+    }
+
+    private static class MemoryCursor extends Cursor {
+        private final long[] pairs;
+
+        private final int count;
+
+        private int next = 0;
+
+        MemoryCursor(long[] pairs, int count) {
+            this.pairs = pairs;
+            this.count = count;
+        }
+
+        @Override
+        boolean advance() {
+            if (next >= count) {
+                return false;
+            }
+            key = pairs[2 * next];
+            value = pairs[2 * next + 1];
+            next += 1;
+            return true;
+        }
+    }
+
+    private static class RunCursor extends Cursor {
+        private final DataInputStream in;
+
+        RunCursor(File run) throws IOException {
+            this.in =
+                    new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            value = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -33,7 +33,25 @@ public class Main {
 
     Main() {
         tools = new TreeMap<>();
-        for (Tool tool : new Tool[] {new ManifestFileReadTool()}) {
+        for (Tool tool :
+                new Tool[] {
+                    new ManifestFileReadTool(),
+                    new FindDuplicatesTool(),
+                    new BoundsIndexTool(),
+                    new BoundsQueryTool(),
+                    new ManifestStatsTool(),
+                    new CrawlTool(),
+                    new RewriteManifestsTool(),
+                    new JsonToManifestTool(),
+                    new ManifestToParquetTool(),
+                    new MetadataToJsonTool(),
+                    new FollowTool(),
+                    new DumpManifestsTool(),
+                    new VerifyMetricsTool(),
+                    new DeleteStatsTool(),
+                    new HistoryScanTool(),
+                    new BatchTool(this::newTool),
+                }) {
             Tool prev = tools.put(tool.getName(), tool);
             if (prev != null) {
                 throw new AssertionError("Two tools with identical names: " + tool + ", " + prev);
@@ -42,6 +60,22 @@ public class Main {
         }
     }
 
+    /**
+     * Returns a new instance of the named tool, for running a tool more than once in a JVM, or
+     * null if there is no such tool.
+     */
+    Tool newTool(String name) {
+        Tool tool = tools.get(name);
+        if (tool == null || tool instanceof BatchTool) {
+            return tool;
+        }
+        try {
+            return tool.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create tool " + name, e);
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         int rc = new Main().run(args);
         System.exit(rc);
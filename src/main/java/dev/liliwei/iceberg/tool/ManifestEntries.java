@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accessors for generic manifest_entry records. Fields that only exist in some format versions
+ * are looked up by name and fall back to their spec defaults when absent.
+ */
+public class ManifestEntries {
+    public static final int STATUS_EXISTING = 0;
+
+    public static final int STATUS_ADDED = 1;
+
+    public static final int STATUS_DELETED = 2;
+
+    public static final int CONTENT_DATA = 0;
+
+    public static final int CONTENT_POSITION_DELETES = 1;
+
+    public static final int CONTENT_EQUALITY_DELETES = 2;
+
+    private static final List<String> ENTRY_FIELDS =
+            Arrays.asList("status", "snapshot_id", "sequence_number", "file_sequence_number");
+
+    private ManifestEntries() {}
+
+    /**
+     * Opens a manifest reading only the entry status, snapshot and sequence fields plus the named
+     * data_file fields. Avro skips every other field without materializing it, which avoids
+     * decoding the metric maps when a tool does not need them.
+     *
+     * @param filename The manifest to open
+     * @param dataFileFields The data_file fields to read
+     * @throws IOException
+     */
+    public static DataFileStream<GenericRecord> openProjected(
+            String filename, String... dataFileFields) throws IOException {
+        InputStream in = new BufferedInputStream(Util.openFromFS(filename));
+        try {
+            GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>();
+            DataFileStream<GenericRecord> stream = new DataFileStream<>(in, reader);
+            reader.setExpected(project(stream.getSchema(), Arrays.asList(dataFileFields)));
+            return stream;
+        } catch (IOException | RuntimeException e) {
+            Util.close(in);
+            throw e;
+        }
+    }
+
+    /** Returns the manifest_entry schema reduced to the entry fields and the given data fields. */
+    static Schema project(Schema entrySchema, List<String> dataFileFields) {
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Schema.Field field : entrySchema.getFields()) {
+            if (ENTRY_FIELDS.contains(field.name())) {
+                fields.add(new Schema.Field(field, field.schema()));
+            } else if (field.name().equals("data_file")) {
+                Schema dataFileSchema = field.schema();
+                List<Schema.Field> dataFields = new ArrayList<>();
+                for (Schema.Field dataField : dataFileSchema.getFields()) {
+                    if (dataFileFields.contains(dataField.name())) {
+                        dataFields.add(new Schema.Field(dataField, dataField.schema()));
+                    }
+                }
+                Schema projected =
+                        Schema.createRecord(
+                                dataFileSchema.getName(),
+                                dataFileSchema.getDoc(),
+                                dataFileSchema.getNamespace(),
+                                false,
+                                dataFields);
+                fields.add(new Schema.Field(field, projected));
+            }
+        }
+        return Schema.createRecord(
+                entrySchema.getName(),
+                entrySchema.getDoc(),
+                entrySchema.getNamespace(),
+                false,
+                fields);
+    }
+
+    /** Returns the named field of the record, or null if the record's schema has no such field. */
+    static Object field(GenericRecord record, String name) {
+        Schema.Field field = record.getSchema().getField(name);
+        return field == null ? null : record.get(field.pos());
+    }
+
+    public static int status(GenericRecord entry) {
+        return ((Number) entry.get("status")).intValue();
+    }
+
+    /** Returns true unless the entry records a deletion. */
+    public static boolean isLive(GenericRecord entry) {
+        return status(entry) != STATUS_DELETED;
+    }
+
+    public static Long snapshotId(GenericRecord entry) {
+        Number snapshotId = (Number) field(entry, "snapshot_id");
+        return snapshotId == null ? null : snapshotId.longValue();
+    }
+
+    /** The data sequence number of a v2 entry, or null if it is inherited from the manifest. */
+    public static Long sequenceNumber(GenericRecord entry) {
+        Number sequenceNumber = (Number) field(entry, "sequence_number");
+        return sequenceNumber == null ? null : sequenceNumber.longValue();
+    }
+
+    public static GenericRecord dataFile(GenericRecord entry) {
+        return (GenericRecord) entry.get("data_file");
+    }
+
+    /** The content of the file: data, position deletes or equality deletes. */
+    public static int content(GenericRecord dataFile) {
+        Number content = (Number) field(dataFile, "content");
+        return content == null ? CONTENT_DATA : content.intValue();
+    }
+
+    public static String filePath(GenericRecord dataFile) {
+        return dataFile.get("file_path").toString();
+    }
+
+    public static GenericRecord partition(GenericRecord dataFile) {
+        return (GenericRecord) dataFile.get("partition");
+    }
+
+    public static long recordCount(GenericRecord dataFile) {
+        return ((Number) dataFile.get("record_count")).longValue();
+    }
+
+    public static long fileSizeInBytes(GenericRecord dataFile) {
+        return ((Number) dataFile.get("file_size_in_bytes")).longValue();
+    }
+
+    /**
+     * Reads a metric map, such as lower_bounds or value_counts, that Iceberg stores as an array
+     * of key/value records. Returns an empty map when the field is absent or null.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> Map<Integer, V> metricMap(GenericRecord dataFile, String name) {
+        Object value = field(dataFile, name);
+        Map<Integer, V> result = new HashMap<>();
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                GenericRecord pair = (GenericRecord) item;
+                result.put(((Number) pair.get("key")).intValue(), (V) pair.get("value"));
+            }
+        }
+        return result;
+    }
+}
@@ -18,30 +18,29 @@
 
 package dev.liliwei.iceberg.tool;
 
-import com.google.common.collect.Maps;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.SeekableInput;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.io.DatumWriter;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -51,6 +50,12 @@ import joptsimple.OptionSpec;
 public class ManifestFileReadTool implements Tool {
     private static final long DEFAULT_HEAD_COUNT = 10;
 
+    /** Size of the trailing part of the file searched first for the --tail blocks. */
+    private static final long TAIL_WINDOW = 1L << 20;
+
+    /** The --range argument, FROM:TO record indexes. */
+    private static final Pattern RANGE = Pattern.compile("(\\d{1,18}):(\\d{1,18})");
+
     private static long getHeadCount(
             OptionSet optionSet, OptionSpec<String> headOption, List<String> nargs) {
         long headCount = Long.MAX_VALUE;
@@ -103,6 +108,44 @@ public class ManifestFileReadTool implements Tool {
                         .accepts("reader-schema", "Reader schema")
                         .withOptionalArg()
                         .ofType(String.class);
+        OptionSpec<Long> offsetOption =
+                optionParser
+                        .accepts("offset", "Skips the first N records.")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Long> tailOption =
+                optionParser
+                        .accepts("tail", "Converts the last N records.")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<String> rangeOption =
+                optionParser
+                        .accepts("range", "Converts records FROM (inclusive) to TO (exclusive).")
+                        .withRequiredArg()
+                        .describedAs("FROM:TO")
+                        .ofType(String.class);
+        OptionSpec<Double> sampleOption =
+                optionParser
+                        .accepts(
+                                "sample",
+                                "Converts a random fraction of the Avro blocks, each as an object"
+                                        + " with its weight.")
+                        .withRequiredArg()
+                        .ofType(Double.class);
+        OptionSpec<Long> seedOption =
+                optionParser
+                        .accepts("seed", "Random seed of --sample (default is random).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<String> formatOption =
+                optionParser
+                        .accepts(
+                                "format",
+                                "Output format: json, or the binary smile or cbor, written as"
+                                        + " one array.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("json");
 
         OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
         Boolean pretty = optionSet.has(prettyOption);
@@ -119,80 +162,381 @@ public class ManifestFileReadTool implements Tool {
         }
 
         long headCount = getHeadCount(optionSet, headOption, nargs);
+        long offset = optionSet.has(offsetOption) ? offsetOption.value(optionSet) : 0;
+        if (optionSet.has(rangeOption)) {
+            Matcher range = RANGE.matcher(rangeOption.value(optionSet));
+            boolean valid = range.matches();
+            long from = valid ? Long.parseLong(range.group(1)) : 0;
+            long to = valid ? Long.parseLong(range.group(2)) : -1;
+            if (from > to) {
+                printHelp(err);
+                err.println();
+                optionParser.printHelpOn(err);
+                return 1;
+            }
+            offset += from;
+            headCount = Math.min(headCount, to - from);
+        }
+        boolean skipping = optionSet.has(offsetOption) || optionSet.has(rangeOption);
+        Long tail = optionSet.has(tailOption) ? tailOption.value(optionSet) : null;
+        if (offset < 0 || (tail != null && (tail < 0 || skipping))) {
+            err.println("--offset/--range and --tail must not be negative or combined");
+            return 1;
+        }
+        Double sample = optionSet.has(sampleOption) ? sampleOption.value(optionSet) : null;
+        if (sample != null && (sample <= 0 || sample > 1 || skipping || tail != null)) {
+            err.println(
+                    "--sample must be in (0, 1] and cannot be combined with"
+                            + " --offset/--range/--tail");
+            return 1;
+        }
 
-        if (nargs.size() != 2) {
+        String format = formatOption.value(optionSet);
+        if (nargs.size() != 2 || Util.jsonFactory(format) == null) {
             printHelp(err);
             err.println();
             optionParser.printHelpOn(err);
             return 1;
         }
 
-        BufferedInputStream inStream = Util.fileOrStdin(nargs.get(0), stdin);
+        boolean seek = offset > 0 || tail != null || sample != null;
+        if (seek && nargs.get(0).equals("-")) {
+            err.println("--offset, --tail, --range and --sample need a manifest file, not stdin");
+            return 1;
+        }
+
+        if (pretty && !format.equals("json")) {
+            err.println("--pretty applies to the json format only");
+            return 1;
+        }
 
-        JsonReader jsonReader =
-                new Gson().newJsonReader(new BufferedReader(new FileReader(nargs.get(1))));
-        Map<Integer, String> icebergFields = parseMetaData(jsonReader);
+        Map<Integer, String> icebergFields = IcebergMetadata.read(nargs.get(1)).fieldTypes();
+        // the binary formats write the enclosing array through the generator of the records
+        JsonGenerator binary =
+                format.equals("json") ? null : Util.jsonFactory(format).createGenerator(out);
 
         GenericDatumReader<Object> reader = new GenericDatumReader<>();
         if (readerSchema != null) {
             reader.setExpected(readerSchema);
         }
-        try (DataFileStream<Object> streamReader = new DataFileStream<>(inStream, reader)) {
-            Schema schema = readerSchema != null ? readerSchema : streamReader.getSchema();
-            DatumWriter writer = new IcebergDatumWriter<>(schema, icebergFields);
-            IcebergEncoder encoder = new IcebergEncoder(schema, out, pretty);
+        if (!seek) {
+            BufferedInputStream inStream = Util.fileOrStdin(nargs.get(0), stdin);
+            try (DataFileStream<Object> streamReader = new DataFileStream<>(inStream, reader)) {
+                dump(
+                        streamReader,
+                        0,
+                        headCount,
+                        readerSchema,
+                        icebergFields,
+                        out,
+                        binary,
+                        pretty);
+            }
+            return 0;
+        }
+
+        SeekableInput input = Util.openSeekableFromFS(nargs.get(0));
+        try (DataFileReader<Object> fileReader = new DataFileReader<>(input, reader)) {
+            AvroBlocks blocks = new AvroBlocks(input);
+            if (sample != null) {
+                long seed =
+                        optionSet.has(seedOption)
+                                ? seedOption.value(optionSet)
+                                : new Random().nextLong();
+                dumpSample(
+                        fileReader,
+                        blocks,
+                        sample,
+                        seed,
+                        readerSchema,
+                        icebergFields,
+                        out,
+                        err,
+                        binary,
+                        pretty);
+                return 0;
+            }
+            long skip =
+                    tail != null
+                            ? seekToTail(fileReader, blocks, tail)
+                            : seekToOffset(fileReader, blocks, offset);
+            dump(
+                    fileReader,
+                    skip,
+                    tail != null ? Math.min(headCount, tail) : headCount,
+                    readerSchema,
+                    icebergFields,
+                    out,
+                    binary,
+                    pretty);
+        }
+        return 0;
+    }
+
+    private static void dump(
+            DataFileStream<Object> streamReader,
+            long skip,
+            long count,
+            Schema readerSchema,
+            Map<Integer, String> icebergFields,
+            PrintStream out,
+            JsonGenerator binary,
+            boolean pretty)
+            throws IOException {
+        Schema schema = readerSchema != null ? readerSchema : streamReader.getSchema();
+        DatumWriter writer = new IcebergDatumWriter<>(schema, icebergFields);
+        IcebergEncoder encoder = newEncoder(schema, out, binary, pretty);
+        Object datum = null;
+        for (long skipped = 0; skipped < skip && streamReader.hasNext(); skipped++) {
+            datum = streamReader.next(datum);
+        }
+        if (binary != null) {
+            binary.writeStartArray();
+        } else {
             out.println("[");
-            for (long recordCount = 0;
-                    streamReader.hasNext() && recordCount < headCount;
-                    recordCount++) {
-                Object datum = streamReader.next();
-                writer.write(datum, encoder);
-                encoder.flush();
-                if (streamReader.hasNext()) {
-                    out.print(",");
-                }
+        }
+        for (long recordCount = 0;
+                streamReader.hasNext() && recordCount < count;
+                recordCount++) {
+            if (recordCount > 0 && binary == null) {
+                out.print(",");
             }
+            datum = streamReader.next();
+            writer.write(datum, encoder);
             encoder.flush();
+        }
+        encoder.flush();
+        if (binary != null) {
+            binary.writeEndArray();
+            binary.flush();
+        } else {
             out.println();
             out.println("]");
-            out.flush();
         }
+        out.flush();
+    }
+
+    private static IcebergEncoder newEncoder(
+            Schema schema, PrintStream out, JsonGenerator binary, boolean pretty)
+            throws IOException {
+        return binary != null
+                ? new IcebergEncoder(schema, binary)
+                : new IcebergEncoder(schema, out, pretty);
+    }
+
+    /**
+     * Decodes a random subset of about the given fraction of the blocks, found by syncing to
+     * sample points instead of reading every block header, so the cost follows the sample size
+     * rather than the file size.
+     *
+     * <p>The points are spaced evenly over the data bytes from a random start, at the size of the
+     * first block divided by the fraction. A block is chosen if a point falls into it, so a block
+     * of n bytes is chosen with probability n divided by the spacing, or always if it is larger;
+     * blocks of equal size, the usual case, are equally likely. Every block is written as an
+     * object with its offset, record count and weight, the inverse of that probability, so that
+     * sums over the sample scaled by the weights are unbiased estimates for the whole file.
+     */
+    private static void dumpSample(
+            DataFileReader<Object> fileReader,
+            AvroBlocks blocks,
+            double fraction,
+            long seed,
+            Schema readerSchema,
+            Map<Integer, String> icebergFields,
+            PrintStream out,
+            PrintStream err,
+            JsonGenerator binary,
+            boolean pretty)
+            throws IOException {
+        long firstBlock = fileReader.previousSync();
+        long dataBytes = blocks.length() - firstBlock;
+        List<AvroBlocks.Block> chosen = new ArrayList<>();
+        long sampledBytes = 0;
+        double spacing = 0;
+        AvroBlocks.Block first = blocks.read(firstBlock);
+        if (fraction >= 1) {
+            chosen = blocks.scan(firstBlock);
+        } else if (first != null) {
+            spacing = (first.next - first.offset) / fraction;
+            double start = new SplittableRandom(seed).nextDouble() * spacing;
+            AvroBlocks.Block block = null;
+            for (long j = 0; ; j++) {
+                long point = firstBlock + (long) (start + j * spacing);
+                if (point >= blocks.length()) {
+                    break;
+                }
+                if (block != null && block.next > point) {
+                    continue; // a block larger than the spacing holds several points
+                }
+                block =
+                        blockAt(
+                                fileReader,
+                                blocks,
+                                point,
+                                first.next - first.offset,
+                                block != null ? block.next : firstBlock);
+                chosen.add(block);
+            }
+        }
+        for (AvroBlocks.Block block : chosen) {
+            sampledBytes += block.next - block.offset;
+        }
+
+        Schema schema = readerSchema != null ? readerSchema : fileReader.getSchema();
+        DatumWriter writer = new IcebergDatumWriter<>(schema, icebergFields);
+        IcebergEncoder encoder = newEncoder(schema, out, binary, pretty);
+        long sampled = 0;
+        if (binary != null) {
+            binary.writeStartArray();
+        } else {
+            out.println("[");
+        }
+        int i = 0;
+        for (AvroBlocks.Block block : chosen) {
+            double weight = Math.max(1, spacing / (block.next - block.offset));
+            fileReader.seek(block.offset);
+            if (binary != null) {
+                binary.writeStartObject();
+                binary.writeNumberField("block_offset", block.offset);
+                binary.writeNumberField("block_records", block.count);
+                binary.writeNumberField("weight", weight);
+                binary.writeArrayFieldStart("records");
+            } else {
+                out.print(i++ > 0 ? "," : "");
+                out.print(
+                        String.format(
+                                "{\"block_offset\":%d,\"block_records\":%d,\"weight\":%s,"
+                                        + "\"records\":[",
+                                block.offset, block.count, weight));
+            }
+            for (long r = 0; r < block.count; r++) {
+                if (r > 0 && binary == null) {
+                    out.print(",");
+                }
+                writer.write(fileReader.next(), encoder);
+                encoder.flush();
+            }
+            if (binary != null) {
+                binary.writeEndArray();
+                binary.writeEndObject();
+            } else {
+                out.println("]}");
+            }
+            sampled += block.count;
+        }
+        if (binary != null) {
+            binary.writeEndArray();
+            binary.flush();
+        } else {
+            out.println("]");
+        }
+        out.flush();
+        err.println(
+                String.format(
+                        "Sampled %d blocks (%d records, %d of %d bytes), seed %d",
+                        chosen.size(), sampled, sampledBytes, dataBytes, seed));
+    }
+
+    /**
+     * Returns the block holding the byte at the given position, given the offset of an earlier
+     * block. The reader syncs to a block boundary shortly before the position, moving back until
+     * one is found, and the block headers are read from there, or from the earlier block if that
+     * is closer.
+     */
+    private static AvroBlocks.Block blockAt(
+            DataFileReader<Object> fileReader,
+            AvroBlocks blocks,
+            long position,
+            long back,
+            long start)
+            throws IOException {
+        for (long from = position - back; from > start; from -= back, back *= 2) {
+            fileReader.sync(from);
+            if (fileReader.previousSync() <= position) {
+                start = fileReader.previousSync();
+                break;
+            }
+        }
+        AvroBlocks.Block block = blocks.read(start);
+        while (block.next <= position) {
+            block = blocks.read(block.next);
+        }
+        return block;
+    }
+
+    /**
+     * Positions the reader at the block holding the record with the given index, using only the
+     * block headers, and returns the number of records to skip within that block.
+     */
+    private static long seekToOffset(
+            DataFileReader<Object> fileReader, AvroBlocks blocks, long offset)
+            throws IOException {
+        long before = 0;
+        for (AvroBlocks.Block block = blocks.read(fileReader.previousSync());
+                block != null;
+                block = blocks.read(block.next)) {
+            if (before + block.count > offset) {
+                fileReader.seek(block.offset);
+                return offset - before;
+            }
+            before += block.count;
+        }
+        fileReader.seek(blocks.length());
         return 0;
     }
 
+    /**
+     * Positions the reader at the first block holding one of the last records, and returns the
+     * number of records to skip within that block. Only the trailing blocks are visited: the
+     * reader syncs to a block boundary near the end of the file and moves the boundary backwards
+     * until enough records are found.
+     */
+    private static long seekToTail(DataFileReader<Object> fileReader, AvroBlocks blocks, long tail)
+            throws IOException {
+        long firstBlock = fileReader.previousSync();
+        long length = blocks.length();
+        for (long window = TAIL_WINDOW; ; window *= 4) {
+            long start = firstBlock;
+            if (length - window > firstBlock) {
+                fileReader.sync(length - window);
+                start = fileReader.previousSync();
+            }
+            List<AvroBlocks.Block> found = blocks.scan(start);
+            long remaining = 0;
+            for (AvroBlocks.Block block : found) {
+                remaining += block.count;
+            }
+            if (remaining < tail && start > firstBlock) {
+                continue;
+            }
+            for (AvroBlocks.Block block : found) {
+                if (remaining - block.count < tail) {
+                    fileReader.seek(block.offset);
+                    return Math.max(0, remaining - tail);
+                }
+                remaining -= block.count;
+            }
+            fileReader.seek(length);
+            return 0;
+        }
+    }
+
     private void printHelp(PrintStream ps) {
-        ps.println("tojson [--pretty] [--head[=X]] manifest-file metadata-json-file");
+        ps.println(
+                "manifest2json [--pretty | --format=F] [--head[=X]] [--offset=N | --tail=N"
+                        + " | --range=FROM:TO | --sample=F [--seed=S]] manifest-file"
+                        + " metadata-json-file");
         ps.println();
         ps.println(getShortDescription());
         ps.println("A dash ('-') can be given as an input file to use stdin");
+        ps.println(
+                "--offset, --tail, --range and --sample skip whole Avro blocks without decoding"
+                        + " them.");
+        ps.println("json2manifest --format reads the smile and cbor outputs back.");
     }
 
     public Map<Integer, String> parseMetaData(JsonReader jsonReader) {
-        Map<Integer, String> fieldMap = Maps.newHashMap();
-
-        JsonElement root = JsonParser.parseReader(jsonReader);
-        JsonObject asJsonObject = root.getAsJsonObject();
-
-        AtomicReference<JsonObject> schemaRef =
-                new AtomicReference<>(asJsonObject.getAsJsonObject("schema"));
-        if (schemaRef.get() == null) {
-            int schemaId = asJsonObject.get("current-schema-id").getAsInt();
-            JsonArray schemas = asJsonObject.getAsJsonArray("schemas");
-            schemas.forEach(
-                    schemaArr -> {
-                        JsonObject schemaObj = schemaArr.getAsJsonObject();
-                        if (schemaObj.get("schema-id").getAsInt() == schemaId) {
-                            schemaRef.set(schemaObj);
-                        }
-                    });
-        }
-        JsonArray fields = schemaRef.get().getAsJsonArray("fields");
-        Iterator<JsonElement> iterator = fields.iterator();
-        iterator.forEachRemaining(
-                fieldJson -> {
-                    JsonObject field = fieldJson.getAsJsonObject();
-                    fieldMap.put(field.get("id").getAsInt(), field.get("type").getAsString());
-                });
-        return fieldMap;
+        return IcebergMetadata.parseFieldTypes(
+                JsonParser.parseReader(jsonReader).getAsJsonObject());
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.google.common.collect.Lists;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Reads the manifest list of a snapshot. */
+public class ManifestListReader {
+    /** Manifest content id of data manifests. */
+    public static final int CONTENT_DATA = 0;
+
+    /** Manifest content id of delete manifests. */
+    public static final int CONTENT_DELETES = 1;
+
+    private ManifestListReader() {}
+
+    /**
+     * Returns the manifests of a snapshot, either from its manifest list or, for old format v1
+     * snapshots, from the inline manifest paths.
+     *
+     * @param snapshot The snapshot to list
+     * @throws IOException
+     */
+    public static List<ManifestInfo> read(IcebergMetadata.SnapshotInfo snapshot)
+            throws IOException {
+        if (snapshot.manifestList() != null) {
+            return read(snapshot.manifestList());
+        }
+        List<ManifestInfo> manifests = Lists.newArrayList();
+        if (snapshot.manifests() != null) {
+            for (String path : snapshot.manifests()) {
+                manifests.add(
+                        new ManifestInfo(path, -1L, 0, CONTENT_DATA, null, 0L, 0L, 0, 0, 0));
+            }
+        }
+        return manifests;
+    }
+
+    /**
+     * Reads a manifest list file.
+     *
+     * @param manifestList The manifest list file to read
+     * @throws IOException
+     */
+    public static List<ManifestInfo> read(String manifestList) throws IOException {
+        List<ManifestInfo> manifests = Lists.newArrayList();
+        try (DataFileStream<GenericRecord> stream = Util.openAvroFile(manifestList)) {
+            for (GenericRecord record : stream) {
+                manifests.add(ManifestInfo.fromRecord(record));
+            }
+        }
+        return manifests;
+    }
+
+    /** A single entry of a manifest list. */
+    public static class ManifestInfo {
+        private final String path;
+
+        private final long length;
+
+        private final int specId;
+
+        private final int content;
+
+        private final Long addedSnapshotId;
+
+        private final long sequenceNumber;
+
+        private final long minSequenceNumber;
+
+        private final int addedFilesCount;
+
+        private final int existingFilesCount;
+
+        private final int deletedFilesCount;
+
+        ManifestInfo(
+                String path,
+                long length,
+                int specId,
+                int content,
+                Long addedSnapshotId,
+                long sequenceNumber,
+                long minSequenceNumber,
+                int addedFilesCount,
+                int existingFilesCount,
+                int deletedFilesCount) {
+            this.path = path;
+            this.length = length;
+            this.specId = specId;
+            this.content = content;
+            this.addedSnapshotId = addedSnapshotId;
+            this.sequenceNumber = sequenceNumber;
+            this.minSequenceNumber = minSequenceNumber;
+            this.addedFilesCount = addedFilesCount;
+            this.existingFilesCount = existingFilesCount;
+            this.deletedFilesCount = deletedFilesCount;
+        }
+
+        static ManifestInfo fromRecord(GenericRecord record) {
+            Number content = (Number) ManifestEntries.field(record, "content");
+            Number sequenceNumber = (Number) ManifestEntries.field(record, "sequence_number");
+            Number minSequenceNumber =
+                    (Number) ManifestEntries.field(record, "min_sequence_number");
+            Number addedSnapshotId = (Number) ManifestEntries.field(record, "added_snapshot_id");
+            return new ManifestInfo(
+                    record.get("manifest_path").toString(),
+                    ((Number) record.get("manifest_length")).longValue(),
+                    ((Number) record.get("partition_spec_id")).intValue(),
+                    content == null ? CONTENT_DATA : content.intValue(),
+                    addedSnapshotId == null ? null : addedSnapshotId.longValue(),
+                    sequenceNumber == null ? 0L : sequenceNumber.longValue(),
+                    minSequenceNumber == null ? 0L : minSequenceNumber.longValue(),
+                    count(record, "added_files_count", "added_data_files_count"),
+                    count(record, "existing_files_count", "existing_data_files_count"),
+                    count(record, "deleted_files_count", "deleted_data_files_count"));
+        }
+
+        // v2 renamed the file counts, v1 manifest lists use the *_data_files_count names
+        private static int count(GenericRecord record, String name, String v1Name) {
+            Object value = ManifestEntries.field(record, name);
+            if (value == null) {
+                value = ManifestEntries.field(record, v1Name);
+            }
+            return value == null ? 0 : ((Number) value).intValue();
+        }
+
+        public String path() {
+            return path;
+        }
+
+        /** Manifest file length in bytes, or -1 when unknown. */
+        public long length() {
+            return length;
+        }
+
+        public int specId() {
+            return specId;
+        }
+
+        /** {@link #CONTENT_DATA} or {@link #CONTENT_DELETES}. */
+        public int content() {
+            return content;
+        }
+
+        public Long addedSnapshotId() {
+            return addedSnapshotId;
+        }
+
+        public long sequenceNumber() {
+            return sequenceNumber;
+        }
+
+        public long minSequenceNumber() {
+            return minSequenceNumber;
+        }
+
+        public int addedFilesCount() {
+            return addedFilesCount;
+        }
+
+        public int existingFilesCount() {
+            return existingFilesCount;
+        }
+
+        public int deletedFilesCount() {
+            return deletedFilesCount;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Loads all entries of a snapshot into a {@link ManifestEntryStore} and aggregates them per
+ * partition, content type or adding snapshot, or lists the largest files.
+ */
+public class ManifestStatsTool implements Tool {
+    private static final String[] CONTENT_NAMES = {"data", "position-deletes", "equality-deletes"};
+
+    @Override
+    public String getName() {
+        return "manifest-stats";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Aggregates the entries of a snapshot per partition, content or snapshot.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts("snapshot-id", "Snapshot to read (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<String> groupByOption =
+                optionParser
+                        .accepts("group-by", "One of partition, content, snapshot or none.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("partition");
+        OptionSpec<String> columnOption =
+                optionParser
+                        .accepts(
+                                "column",
+                                "Column name or field id whose value range is reported per"
+                                        + " group.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<Integer> largestOption =
+                optionParser
+                        .accepts("largest", "List the N largest live files instead.")
+                        .withRequiredArg()
+                        .ofType(Integer.class);
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests loaded in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        String groupBy = groupByOption.value(optionSet);
+        if (nargs.size() != 1
+                || !(groupBy.equals("partition")
+                        || groupBy.equals("content")
+                        || groupBy.equals("snapshot")
+                        || groupBy.equals("none"))) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        IcebergMetadata.SnapshotInfo snapshot =
+                optionSet.has(snapshotOption)
+                        ? metadata.snapshot(snapshotOption.value(optionSet))
+                        : metadata.currentSnapshot();
+        if (snapshot == null) {
+            err.println("Snapshot not found");
+            return 1;
+        }
+        Integer fieldId = null;
+        if (optionSet.has(columnOption)) {
+            fieldId = resolveColumn(metadata, columnOption.value(optionSet));
+            if (fieldId == null || !metadata.fieldTypes().containsKey(fieldId)) {
+                err.println("Unknown or non-primitive column: " + columnOption.value(optionSet));
+                return 1;
+            }
+        }
+
+        long start = System.nanoTime();
+        ManifestEntryStore store =
+                ManifestEntryStore.load(
+                        ManifestListReader.read(snapshot),
+                        metadata.fieldTypes(),
+                        fieldId == null
+                                ? Collections.<Integer>emptySet()
+                                : Collections.singleton(fieldId),
+                        threadsOption.value(optionSet));
+        long loaded = System.nanoTime();
+
+        JsonGenerator generator = Util.jsonLines(out);
+
+        if (optionSet.has(largestOption)) {
+            writeLargest(store, largestOption.value(optionSet), generator);
+        } else {
+            Integer column = fieldId;
+            Map<String, GroupStats> groups =
+                    store.chunks()
+                            .map(chunk -> aggregate(chunk, groupBy, column))
+                            .reduce(new TreeMap<>(), ManifestStatsTool::merge);
+            for (Map.Entry<String, GroupStats> group : groups.entrySet()) {
+                writeGroup(group.getKey(), group.getValue(), generator);
+            }
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "%d entries in %d manifests, ~%d KB in memory, loaded in %.1f ms,"
+                                + " queried in %.1f ms",
+                        store.size(),
+                        store.chunkList().size(),
+                        store.estimatedBytes() / 1024,
+                        (loaded - start) / 1e6,
+                        (System.nanoTime() - loaded) / 1e6));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "manifest-stats [--snapshot-id=X] [--group-by=G] [--column=C] [--largest=N]"
+                        + " [--threads=N] metadata-json-file");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Deleted entries are counted separately and excluded from the other totals.");
+    }
+
+    private static Integer resolveColumn(IcebergMetadata metadata, String column) {
+        for (Map.Entry<Integer, String> field : metadata.fieldNames().entrySet()) {
+            if (column.equals(field.getValue()) || column.equals(field.getKey().toString())) {
+                return field.getKey();
+            }
+        }
+        return null;
+    }
+
+    /** Aggregates one chunk into per-group totals with tight loops over its arrays. */
+    private static Map<String, GroupStats> aggregate(
+            ManifestEntryStore.Chunk chunk, String groupBy, Integer fieldId) {
+        int rows = chunk.size();
+        int[] groups = new int[rows];
+        List<String> keys = new ArrayList<>();
+        switch (groupBy) {
+            case "partition":
+                for (int id = 0; id < chunk.partitionCount(); id++) {
+                    keys.add(chunk.partitionString(id));
+                }
+                for (int row = 0; row < rows; row++) {
+                    groups[row] = chunk.partitionId(row);
+                }
+                break;
+            case "content":
+                Collections.addAll(keys, CONTENT_NAMES);
+                for (int row = 0; row < rows; row++) {
+                    groups[row] = chunk.content(row);
+                }
+                break;
+            case "snapshot":
+                Map<Long, Integer> snapshotGroups = new HashMap<>();
+                for (int row = 0; row < rows; row++) {
+                    long snapshotId = chunk.snapshotId(row);
+                    Integer group = snapshotGroups.get(snapshotId);
+                    if (group == null) {
+                        group = keys.size();
+                        snapshotGroups.put(snapshotId, group);
+                        keys.add(Long.toString(snapshotId));
+                    }
+                    groups[row] = group;
+                }
+                break;
+            default:
+                keys.add("all");
+                break;
+        }
+
+        int groupCount = keys.size();
+        long[] files = new long[groupCount];
+        long[] records = new long[groupCount];
+        long[] bytes = new long[groupCount];
+        long[] deleted = new long[groupCount];
+        int[] liveGroups = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            int group = groups[row];
+            if (chunk.status(row) == ManifestEntries.STATUS_DELETED) {
+                deleted[group] += 1;
+                liveGroups[row] = -1;
+            } else {
+                files[group] += 1;
+                records[group] += chunk.recordCount(row);
+                bytes[group] += chunk.fileSize(row);
+                liveGroups[row] = group;
+            }
+        }
+        Object[] min = new Object[groupCount];
+        Object[] max = new Object[groupCount];
+        ManifestEntryStore.BoundVector bounds = fieldId == null ? null : chunk.bounds(fieldId);
+        if (bounds != null) {
+            bounds.reduce(liveGroups, rows, min, max);
+        }
+
+        Map<String, GroupStats> result = new HashMap<>();
+        for (int group = 0; group < groupCount; group++) {
+            if (files[group] + deleted[group] > 0) {
+                result.put(
+                        keys.get(group),
+                        new GroupStats(
+                                files[group],
+                                records[group],
+                                bytes[group],
+                                deleted[group],
+                                min[group],
+                                max[group],
+                                bounds == null ? null : bounds.comparator()));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, GroupStats> merge(
+            Map<String, GroupStats> left, Map<String, GroupStats> right) {
+        Map<String, GroupStats> merged = new TreeMap<>(left);
+        for (Map.Entry<String, GroupStats> entry : right.entrySet()) {
+            merged.merge(entry.getKey(), entry.getValue(), GroupStats::plus);
+        }
+        return merged;
+    }
+
+    private static void writeGroup(String key, GroupStats stats, JsonGenerator generator)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("group", key);
+        generator.writeNumberField("files", stats.files);
+        generator.writeNumberField("records", stats.records);
+        generator.writeNumberField("bytes", stats.bytes);
+        generator.writeNumberField("deleted_entries", stats.deleted);
+        if (stats.min != null) {
+            generator.writeStringField("min", render(stats.min));
+            generator.writeStringField("max", render(stats.max));
+        }
+        generator.writeEndObject();
+    }
+
+    private static String render(Object value) {
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return BaseEncoding.base16().lowerCase().encode(bytes);
+        }
+        return value.toString();
+    }
+
+    private static void writeLargest(
+            ManifestEntryStore store, int limit, JsonGenerator generator)
+            throws IOException {
+        // min-heap of (chunk, row) on file size, only paths of the winners are decoded
+        PriorityQueue<long[]> heap =
+                new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        List<ManifestEntryStore.Chunk> chunks = store.chunkList();
+        for (int c = 0; c < chunks.size(); c++) {
+            ManifestEntryStore.Chunk chunk = chunks.get(c);
+            for (int row = 0; row < chunk.size(); row++) {
+                if (chunk.status(row) == ManifestEntries.STATUS_DELETED) {
+                    continue;
+                }
+                long size = chunk.fileSize(row);
+                if (heap.size() < limit) {
+                    heap.add(new long[] {size, c, row});
+                } else if (limit > 0 && size > heap.peek()[0]) {
+                    heap.poll();
+                    heap.add(new long[] {size, c, row});
+                }
+            }
+        }
+        List<long[]> largest = new ArrayList<>(heap);
+        largest.sort((a, b) -> Long.compare(b[0], a[0]));
+        for (long[] file : largest) {
+            ManifestEntryStore.Chunk chunk = chunks.get((int) file[1]);
+            int row = (int) file[2];
+            generator.writeStartObject();
+            generator.writeStringField("file_path", chunk.filePath(row));
+            generator.writeNumberField("file_size_in_bytes", chunk.fileSize(row));
+            generator.writeNumberField("record_count", chunk.recordCount(row));
+            generator.writeStringField("manifest", chunk.manifestPath());
+            generator.writeEndObject();
+        }
+    }
+
+    private static class GroupStats {
+        private final long files;
+
+        private final long records;
+
+        private final long bytes;
+
+        private final long deleted;
+
+        private final Object min;
+
+        private final Object max;
+
+        /** Orders the bounds, null when no bounds were loaded. */
+        private final Comparator<Object> comparator;
+
+        GroupStats(
+                long files,
+                long records,
+                long bytes,
+                long deleted,
+                Object min,
+                Object max,
+                Comparator<Object> comparator) {
+            this.files = files;
+            this.records = records;
+            this.bytes = bytes;
+            this.deleted = deleted;
+            this.min = min;
+            this.max = max;
+            this.comparator = comparator;
+        }
+
+        GroupStats plus(GroupStats other) {
+            Comparator<Object> order = comparator != null ? comparator : other.comparator;
+            Object newMin = min;
+            if (newMin == null || (other.min != null && order.compare(other.min, newMin) < 0)) {
+                newMin = other.min;
+            }
+            Object newMax = max;
+            if (newMax == null || (other.max != null && order.compare(other.max, newMax) > 0)) {
+                newMax = other.max;
+            }
+            return new GroupStats(
+                    files + other.files,
+                    records + other.records,
+                    bytes + other.bytes,
+                    deleted + other.deleted,
+                    newMin,
+                    newMax,
+                    order);
+        }
+    }
+}
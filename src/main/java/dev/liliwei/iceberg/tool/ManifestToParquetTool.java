@@ -0,0 +1,735 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.iceberg.avro.AvroSchemaUtil;
+import org.apache.iceberg.types.Conversions;
+import org.apache.iceberg.types.Type;
+import org.apache.iceberg.types.Types;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Converts manifests into Parquet files with one flat row per entry, for loading manifest dumps
+ * into query engines without parsing JSON.
+ *
+ * <p>Entries are read with {@link ManifestEntries#openProjected} and written through a {@link
+ * WriteSupport} that emits each field straight to Parquet's record consumer. The partition becomes
+ * a group of typed columns, converted from the manifest's own partition schema, and the metrics of
+ * every primitive top-level column of the table become a group holding its counts and its lower
+ * and upper bound, typed by the table schema. Manifests are converted in parallel, one Parquet
+ * file each.
+ */
+public class ManifestToParquetTool implements Tool {
+    private static final String[] DATA_FILE_FIELDS = {
+        "content",
+        "file_path",
+        "file_format",
+        "partition",
+        "record_count",
+        "file_size_in_bytes",
+        "column_sizes",
+        "value_counts",
+        "null_value_counts",
+        "nan_value_counts",
+        "lower_bounds",
+        "upper_bounds",
+        "sort_order_id"
+    };
+
+    /** The metric map fields and the names of their columns in the metrics groups. */
+    private static final String[] COUNT_FIELDS = {
+        "column_sizes", "value_counts", "null_value_counts", "nan_value_counts"
+    };
+
+    private static final String[] COUNT_COLUMNS = {
+        "column_size", "value_count", "null_value_count", "nan_value_count"
+    };
+
+    @Override
+    public String getName() {
+        return "manifest2parquet";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Converts manifests into Parquet files with one typed, flat row per entry.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts(
+                                "snapshot-id",
+                                "Snapshot whose manifests are converted when no manifest file is"
+                                        + " given (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Integer> rowGroupOption =
+                optionParser
+                        .accepts("row-group-size-mb", "Parquet row group size.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(128);
+        OptionSpec<String> compressionOption =
+                optionParser
+                        .accepts(
+                                "compression",
+                                "Parquet compression: uncompressed, snappy, gzip, zstd or lz4.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("snappy");
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests converted in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() < 2) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+        CompressionCodecName compression;
+        try {
+            compression = CompressionCodecName.fromConf(compressionOption.value(optionSet));
+        } catch (IllegalArgumentException e) {
+            err.println("Unknown compression: " + compressionOption.value(optionSet));
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        List<ManifestListReader.ManifestInfo> manifests = new ArrayList<>();
+        List<String> paths = new ArrayList<>(nargs.subList(2, nargs.size()));
+        if (paths.isEmpty()) {
+            IcebergMetadata.SnapshotInfo snapshot =
+                    optionSet.has(snapshotOption)
+                            ? metadata.snapshot(snapshotOption.value(optionSet))
+                            : metadata.currentSnapshot();
+            if (snapshot == null) {
+                err.println("Snapshot not found");
+                return 1;
+            }
+            manifests.addAll(ManifestListReader.read(snapshot));
+            for (ManifestListReader.ManifestInfo manifest : manifests) {
+                paths.add(manifest.path());
+            }
+        }
+
+        List<Column> columns = new ArrayList<>();
+        for (Map.Entry<Integer, String> field : metadata.fieldNames().entrySet()) {
+            String type = metadata.fieldTypes().get(field.getKey());
+            if (type != null) {
+                Type icebergType = Types.fromPrimitiveString(type);
+                columns.add(new Column(field.getKey(), field.getValue(), icebergType));
+            }
+        }
+
+        Path outputDir = new Path(nargs.get(1));
+        FileSystem fs = outputDir.getFileSystem(Util.conf());
+        fs.mkdirs(outputDir);
+        long rowGroupSize = rowGroupOption.value(optionSet) * 1024L * 1024L;
+
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            ManifestListReader.ManifestInfo manifest =
+                    manifests.isEmpty() ? null : manifests.get(i);
+            String name = Util.outputPrefix(i, path) + ".parquet";
+            Path output = new Path(outputDir, name);
+            tasks.add(
+                    () -> convert(path, manifest, columns, output, rowGroupSize, compression));
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = Util.runInParallel(tasks, threadsOption.value(optionSet));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        JsonGenerator generator = Util.jsonLines(out);
+        long entries = 0;
+        for (Result result : results) {
+            generator.writeStartObject();
+            generator.writeStringField("manifest", result.manifest);
+            generator.writeStringField("parquet", result.parquet.toString());
+            generator.writeNumberField("entries", result.entries);
+            generator.writeNumberField("bytes", result.bytes);
+            generator.writeEndObject();
+            entries += result.entries;
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Converted %d manifests with %d entries in %d ms",
+                        results.size(), entries, elapsedMs));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "manifest2parquet [--snapshot-id=X] [--row-group-size-mb=N] [--compression=C]"
+                        + " [--threads=N] metadata-json-file output-dir [manifest-file ...]");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Without manifest files, the manifests of the snapshot are converted.");
+    }
+
+    private static Result convert(
+            String path,
+            ManifestListReader.ManifestInfo manifest,
+            List<Column> columns,
+            Path output,
+            long rowGroupSize,
+            CompressionCodecName compression)
+            throws IOException {
+        long entries = 0;
+        try (DataFileStream<GenericRecord> stream =
+                ManifestEntries.openProjected(path, DATA_FILE_FIELDS)) {
+            org.apache.avro.Schema partitionSchema =
+                    stream.getSchema()
+                            .getField("data_file")
+                            .schema()
+                            .getField("partition")
+                            .schema();
+            Integer specId = manifest != null ? Integer.valueOf(manifest.specId()) : null;
+            String specMeta = stream.getMetaString("partition-spec-id");
+            if (specId == null && specMeta != null) {
+                specId = Integer.valueOf(specMeta);
+            }
+            EntryWriteSupport support =
+                    new EntryWriteSupport(
+                            path,
+                            specId,
+                            manifest,
+                            AvroSchemaUtil.convert(partitionSchema).asStructType(),
+                            columns);
+            try (ParquetWriter<GenericRecord> writer =
+                    new Builder(output, support)
+                            .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                            .withRowGroupSize(rowGroupSize)
+                            .withCompressionCodec(compression)
+                            .build()) {
+                while (stream.hasNext()) {
+                    writer.write(stream.next());
+                    entries += 1;
+                }
+            }
+        }
+        long bytes = output.getFileSystem(Util.conf()).getFileStatus(output).getLen();
+        return new Result(path, output, entries, bytes);
+    }
+
+    private static class Result {
+        private final String manifest;
+
+        private final Path parquet;
+
+        private final long entries;
+
+        private final long bytes;
+
+        Result(String manifest, Path parquet, long entries, long bytes) {
+            this.manifest = manifest;
+            this.parquet = parquet;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+    }
+
+    /** A primitive top-level column of the table, whose metrics get a group of columns. */
+    private static class Column {
+        private final int id;
+
+        private final String name;
+
+        private final Type type;
+
+        Column(int id, String name, Type type) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    private static class Builder extends ParquetWriter.Builder<GenericRecord, Builder> {
+        private final EntryWriteSupport support;
+
+        Builder(Path path, EntryWriteSupport support) {
+            super(path);
+            this.support = support;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<GenericRecord> getWriteSupport(Configuration conf) {
+            return support;
+        }
+    }
+
+    /**
+     * Writes projected manifest entries as flat Parquet rows. Snapshot ids and sequence numbers
+     * that an entry inherits are filled in from the manifest list when it is known.
+     */
+    private static class EntryWriteSupport extends WriteSupport<GenericRecord> {
+        private final String manifestPath;
+
+        private final Integer specId;
+
+        private final ManifestListReader.ManifestInfo manifest;
+
+        private final Types.StructType partitionType;
+
+        private final List<Column> columns;
+
+        private final Map<Integer, Integer> slots = new HashMap<>();
+
+        private final MessageType schema;
+
+        private final Binary manifestBinary;
+
+        /** Counts of the current entry per count field and column, -1 when absent. */
+        private final long[][] counts;
+
+        private final ByteBuffer[] lower;
+
+        private final ByteBuffer[] upper;
+
+        private RecordConsumer consumer;
+
+        EntryWriteSupport(
+                String manifestPath,
+                Integer specId,
+                ManifestListReader.ManifestInfo manifest,
+                Types.StructType partitionType,
+                List<Column> columns) {
+            this.manifestPath = manifestPath;
+            this.specId = specId;
+            this.manifest = manifest;
+            this.partitionType = partitionType;
+            this.columns = columns;
+            for (int i = 0; i < columns.size(); i++) {
+                slots.put(columns.get(i).id, i);
+            }
+            this.counts = new long[COUNT_FIELDS.length][columns.size()];
+            this.lower = new ByteBuffer[columns.size()];
+            this.upper = new ByteBuffer[columns.size()];
+            this.manifestBinary = Binary.fromString(manifestPath);
+            this.schema = buildSchema();
+        }
+
+        private MessageType buildSchema() {
+            org.apache.parquet.schema.Types.MessageTypeBuilder message =
+                    org.apache.parquet.schema.Types.buildMessage();
+            message.required(PrimitiveTypeName.BINARY)
+                    .as(LogicalTypeAnnotation.stringType())
+                    .named("manifest");
+            message.optional(PrimitiveTypeName.INT32).named("spec_id");
+            message.required(PrimitiveTypeName.INT32).named("status");
+            message.optional(PrimitiveTypeName.INT64).named("snapshot_id");
+            message.optional(PrimitiveTypeName.INT64).named("sequence_number");
+            message.optional(PrimitiveTypeName.INT64).named("file_sequence_number");
+            message.required(PrimitiveTypeName.INT32).named("content");
+            message.required(PrimitiveTypeName.BINARY)
+                    .as(LogicalTypeAnnotation.stringType())
+                    .named("file_path");
+            message.required(PrimitiveTypeName.BINARY)
+                    .as(LogicalTypeAnnotation.stringType())
+                    .named("file_format");
+            if (!partitionType.fields().isEmpty()) {
+                List<org.apache.parquet.schema.Type> fields = new ArrayList<>();
+                for (Types.NestedField field : partitionType.fields()) {
+                    fields.add(parquetType(field.type(), field.name()));
+                }
+                message.addField(
+                        new GroupType(
+                                org.apache.parquet.schema.Type.Repetition.OPTIONAL,
+                                "partition",
+                                fields));
+            }
+            message.required(PrimitiveTypeName.INT64).named("record_count");
+            message.required(PrimitiveTypeName.INT64).named("file_size_in_bytes");
+            message.optional(PrimitiveTypeName.INT32).named("sort_order_id");
+            if (!columns.isEmpty()) {
+                List<org.apache.parquet.schema.Type> metrics = new ArrayList<>();
+                for (Column column : columns) {
+                    List<org.apache.parquet.schema.Type> fields = new ArrayList<>();
+                    for (String name : COUNT_COLUMNS) {
+                        fields.add(
+                                org.apache.parquet.schema.Types.optional(PrimitiveTypeName.INT64)
+                                        .named(name));
+                    }
+                    fields.add(parquetType(column.type, "lower_bound"));
+                    fields.add(parquetType(column.type, "upper_bound"));
+                    metrics.add(
+                            new GroupType(
+                                    org.apache.parquet.schema.Type.Repetition.OPTIONAL,
+                                    column.name,
+                                    fields));
+                }
+                message.addField(
+                        new GroupType(
+                                org.apache.parquet.schema.Type.Repetition.OPTIONAL,
+                                "metrics",
+                                metrics));
+            }
+            return message.named("manifest_entry");
+        }
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+            return new WriteContext(schema, Collections.<String, String>emptyMap());
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            this.consumer = recordConsumer;
+        }
+
+        @Override
+        public void write(GenericRecord entry) {
+            GenericRecord dataFile = ManifestEntries.dataFile(entry);
+            Long snapshotId = ManifestEntries.snapshotId(entry);
+            Long sequenceNumber = ManifestEntries.sequenceNumber(entry);
+            Number fileSequenceNumber =
+                    (Number) ManifestEntries.field(entry, "file_sequence_number");
+            if (manifest != null) {
+                if (snapshotId == null) {
+                    snapshotId = manifest.addedSnapshotId();
+                }
+                // only v2 entries have sequence numbers to inherit
+                org.apache.avro.Schema entrySchema = entry.getSchema();
+                if (sequenceNumber == null && entrySchema.getField("sequence_number") != null) {
+                    sequenceNumber = manifest.sequenceNumber();
+                }
+                if (fileSequenceNumber == null
+                        && entrySchema.getField("file_sequence_number") != null) {
+                    fileSequenceNumber = manifest.sequenceNumber();
+                }
+            }
+
+            consumer.startMessage();
+            int index = 0;
+            writeField("manifest", index++, manifestBinary);
+            writeField("spec_id", index++, specId);
+            writeField("status", index++, ManifestEntries.status(entry));
+            writeField("snapshot_id", index++, snapshotId);
+            writeField("sequence_number", index++, sequenceNumber);
+            writeField(
+                    "file_sequence_number",
+                    index++,
+                    fileSequenceNumber == null ? null : fileSequenceNumber.longValue());
+            writeField("content", index++, ManifestEntries.content(dataFile));
+            writeField("file_path", index++, binary(dataFile.get("file_path")));
+            writeField("file_format", index++, binary(dataFile.get("file_format")));
+            if (!partitionType.fields().isEmpty()) {
+                GenericRecord partition = ManifestEntries.partition(dataFile);
+                consumer.startField("partition", index);
+                consumer.startGroup();
+                for (int i = 0; i < partitionType.fields().size(); i++) {
+                    Types.NestedField field = partitionType.fields().get(i);
+                    writeField(field.name(), i, value(field.type(), partition.get(i)));
+                }
+                consumer.endGroup();
+                consumer.endField("partition", index);
+                index += 1;
+            }
+            writeField("record_count", index++, ManifestEntries.recordCount(dataFile));
+            writeField("file_size_in_bytes", index++, ManifestEntries.fileSizeInBytes(dataFile));
+            writeField("sort_order_id", index++, ManifestEntries.field(dataFile, "sort_order_id"));
+            if (!columns.isEmpty() && readMetrics(dataFile)) {
+                consumer.startField("metrics", index);
+                consumer.startGroup();
+                for (int i = 0; i < columns.size(); i++) {
+                    writeMetrics(i);
+                }
+                consumer.endGroup();
+                consumer.endField("metrics", index);
+            }
+            consumer.endMessage();
+        }
+
+        /** Loads the metrics of the entry into the per-column slots; false if it has none. */
+        private boolean readMetrics(GenericRecord dataFile) {
+            boolean any = false;
+            for (int f = 0; f < COUNT_FIELDS.length; f++) {
+                Arrays.fill(counts[f], -1L);
+                for (GenericRecord pair : pairs(dataFile, COUNT_FIELDS[f])) {
+                    Integer slot = slots.get(((Number) pair.get(0)).intValue());
+                    if (slot != null) {
+                        counts[f][slot] = ((Number) pair.get(1)).longValue();
+                        any = true;
+                    }
+                }
+            }
+            any |= readBounds(dataFile, "lower_bounds", lower);
+            any |= readBounds(dataFile, "upper_bounds", upper);
+            return any;
+        }
+
+        private boolean readBounds(GenericRecord dataFile, String name, ByteBuffer[] bounds) {
+            boolean any = false;
+            Arrays.fill(bounds, null);
+            for (GenericRecord pair : pairs(dataFile, name)) {
+                Integer slot = slots.get(((Number) pair.get(0)).intValue());
+                if (slot != null) {
+                    bounds[slot] = (ByteBuffer) pair.get(1);
+                    any = true;
+                }
+            }
+            return any;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Collection<GenericRecord> pairs(GenericRecord dataFile, String name) {
+            Object value = ManifestEntries.field(dataFile, name);
+            return value == null
+                    ? Collections.<GenericRecord>emptyList()
+                    : (Collection<GenericRecord>) value;
+        }
+
+        private void writeMetrics(int slot) {
+            Column column = columns.get(slot);
+            Object lowerValue = bound(column.type, lower[slot]);
+            Object upperValue = bound(column.type, upper[slot]);
+            boolean present = lowerValue != null || upperValue != null;
+            for (int f = 0; f < COUNT_FIELDS.length; f++) {
+                present |= counts[f][slot] >= 0;
+            }
+            if (!present) {
+                return;
+            }
+            consumer.startField(column.name, slot);
+            consumer.startGroup();
+            for (int f = 0; f < COUNT_COLUMNS.length; f++) {
+                if (counts[f][slot] >= 0) {
+                    writeField(COUNT_COLUMNS[f], f, counts[f][slot]);
+                }
+            }
+            writeField("lower_bound", COUNT_COLUMNS.length, lowerValue);
+            writeField("upper_bound", COUNT_COLUMNS.length + 1, upperValue);
+            consumer.endGroup();
+            consumer.endField(column.name, slot);
+        }
+
+        /** Writes a value of a primitive column, or nothing when it is null. */
+        private void writeField(String name, int index, Object value) {
+            if (value == null) {
+                return;
+            }
+            consumer.startField(name, index);
+            if (value instanceof Binary) {
+                consumer.addBinary((Binary) value);
+            } else if (value instanceof Integer) {
+                consumer.addInteger((Integer) value);
+            } else if (value instanceof Long) {
+                consumer.addLong((Long) value);
+            } else if (value instanceof Float) {
+                consumer.addFloat((Float) value);
+            } else if (value instanceof Double) {
+                consumer.addDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                consumer.addBoolean((Boolean) value);
+            } else {
+                throw new IllegalArgumentException(
+                        "Unsupported value " + value.getClass().getName() + " of " + name);
+            }
+            consumer.endField(name, index);
+        }
+    }
+
+    /** Maps an Iceberg primitive type to the Parquet type Iceberg itself writes it as. */
+    private static org.apache.parquet.schema.Type parquetType(Type type, String name) {
+        switch (type.typeId()) {
+            case BOOLEAN:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.BOOLEAN)
+                        .named(name);
+            case INTEGER:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.INT32)
+                        .named(name);
+            case LONG:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.INT64)
+                        .named(name);
+            case FLOAT:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.FLOAT)
+                        .named(name);
+            case DOUBLE:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.DOUBLE)
+                        .named(name);
+            case DATE:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.INT32)
+                        .as(LogicalTypeAnnotation.dateType())
+                        .named(name);
+            case TIME:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.INT64)
+                        .as(
+                                LogicalTypeAnnotation.timeType(
+                                        false, LogicalTypeAnnotation.TimeUnit.MICROS))
+                        .named(name);
+            case TIMESTAMP:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.INT64)
+                        .as(
+                                LogicalTypeAnnotation.timestampType(
+                                        ((Types.TimestampType) type).shouldAdjustToUTC(),
+                                        LogicalTypeAnnotation.TimeUnit.MICROS))
+                        .named(name);
+            case STRING:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.stringType())
+                        .named(name);
+            case UUID:
+                return org.apache.parquet.schema.Types.optional(
+                                PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY)
+                        .length(16)
+                        .as(LogicalTypeAnnotation.uuidType())
+                        .named(name);
+            case FIXED:
+                return org.apache.parquet.schema.Types.optional(
+                                PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY)
+                        .length(((Types.FixedType) type).length())
+                        .named(name);
+            case BINARY:
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.BINARY)
+                        .named(name);
+            case DECIMAL:
+                Types.DecimalType decimal = (Types.DecimalType) type;
+                // unscaled big-endian bytes, as in Iceberg's bounds and Avro's decimals
+                return org.apache.parquet.schema.Types.optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.decimalType(decimal.scale(), decimal.precision()))
+                        .named(name);
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+
+    /**
+     * Converts a bound from Iceberg's single-value serialization. Types stored as bytes keep their
+     * serialized form, which is also their Parquet representation.
+     */
+    private static Object bound(Type type, ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        switch (type.typeId()) {
+            case BOOLEAN:
+            case INTEGER:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case DATE:
+            case TIME:
+            case TIMESTAMP:
+                return value(type, Conversions.fromByteBuffer(type, buffer));
+            default:
+                return value(type, buffer);
+        }
+    }
+
+    /**
+     * Converts a generic Avro value to the object written for the type, or null when it cannot be
+     * represented, such as a fixed value of the wrong length.
+     */
+    private static Object value(Type type, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (type.typeId()) {
+            case INTEGER:
+            case DATE:
+                return ((Number) value).intValue();
+            case LONG:
+            case TIME:
+            case TIMESTAMP:
+                return ((Number) value).longValue();
+            case FLOAT:
+                return ((Number) value).floatValue();
+            case DOUBLE:
+                return ((Number) value).doubleValue();
+            case BOOLEAN:
+                return value;
+            case UUID:
+                return fixed(binary(value), 16);
+            case FIXED:
+                return fixed(binary(value), ((Types.FixedType) type).length());
+            default:
+                return binary(value);
+        }
+    }
+
+    private static Binary fixed(Binary binary, int length) {
+        return binary.length() == length ? binary : null;
+    }
+
+    private static Binary binary(Object value) {
+        if (value instanceof ByteBuffer) {
+            return Binary.fromConstantByteBuffer((ByteBuffer) value);
+        } else if (value instanceof Utf8) {
+            Utf8 utf8 = (Utf8) value;
+            return Binary.fromConstantByteArray(utf8.getBytes(), 0, utf8.getByteLength());
+        } else if (value instanceof GenericFixed) {
+            return Binary.fromConstantByteArray(((GenericFixed) value).bytes());
+        }
+        return Binary.fromString(value.toString());
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Streams the snapshots, snapshot log and metadata log of a metadata.json file as JSON lines.
+ *
+ * <p>Unlike {@link IcebergMetadata}, which builds a Gson tree of the whole file, this reads it
+ * with Jackson's streaming parser: schemas, specs, properties and every other unneeded subtree
+ * are skipped without being materialized, and only one snapshot is held in memory at a time, so
+ * memory does not grow with the file. Numeric snapshot summary values are written as numbers.
+ */
+public class MetadataToJsonTool implements Tool {
+    private static final Pattern INTEGER = Pattern.compile("-?\\d{1,18}");
+
+    private static final List<String> SECTIONS =
+            Arrays.asList("table", "snapshots", "snapshot-log", "metadata-log");
+
+    private static final List<String> TABLE_FIELDS =
+            Arrays.asList(
+                    "format-version",
+                    "table-uuid",
+                    "location",
+                    "last-updated-ms",
+                    "last-sequence-number",
+                    "current-schema-id",
+                    "default-spec-id",
+                    "current-snapshot-id");
+
+    @Override
+    public String getName() {
+        return "metadata2json";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Streams the snapshots and logs of a metadata.json file as JSON lines.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<String> includeOption =
+                optionParser
+                        .accepts(
+                                "include",
+                                "Comma separated sections to write: table, snapshots,"
+                                        + " snapshot-log and metadata-log.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("snapshots,snapshot-log");
+        OptionSpec<String> fromOption =
+                optionParser
+                        .accepts(
+                                "from",
+                                "Only entries at or after this time, in epoch milliseconds or"
+                                        + " ISO-8601.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<String> toOption =
+                optionParser
+                        .accepts("to", "Only entries before this time.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<String> operationOption =
+                optionParser
+                        .accepts(
+                                "operation",
+                                "Comma separated snapshot operations to keep, e.g."
+                                        + " append,overwrite.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+        OptionSpec<Void> noSummaryOption =
+                optionParser.accepts(
+                        "no-summary", "Omits the snapshot summaries except the operation.");
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        Set<String> include = new HashSet<>(split(includeOption.value(optionSet)));
+        if (nargs.size() != 1 || !SECTIONS.containsAll(include)) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+        long from;
+        long to;
+        try {
+            from =
+                    optionSet.has(fromOption)
+                            ? parseTime(fromOption.value(optionSet))
+                            : Long.MIN_VALUE;
+            to = optionSet.has(toOption) ? parseTime(toOption.value(optionSet)) : Long.MAX_VALUE;
+        } catch (DateTimeParseException e) {
+            err.println("Invalid time: " + e.getParsedString());
+            return 1;
+        }
+        Set<String> operations =
+                optionSet.has(operationOption)
+                        ? new HashSet<>(split(operationOption.value(optionSet)))
+                        : null;
+
+        JsonFactory factory = new JsonFactory();
+        JsonGenerator generator = Util.jsonLines(out);
+        Extractor extractor =
+                new Extractor(
+                        generator,
+                        include,
+                        from,
+                        to,
+                        operations,
+                        !optionSet.has(noSummaryOption));
+
+        long start = System.nanoTime();
+        try (InputStream in = Util.fileOrStdin(nargs.get(0), stdin);
+                JsonParser parser = factory.createParser(in)) {
+            extractor.extract(parser);
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Read %d snapshots, wrote %d lines in %d ms",
+                        extractor.snapshots,
+                        extractor.written,
+                        (System.nanoTime() - start) / 1_000_000));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "metadata2json [--include=S,...] [--from=T] [--to=T] [--operation=O,...]"
+                        + " [--no-summary] metadata-json-file");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("A dash ('-') can be given as an input file to use stdin");
+        ps.println("Every line has a \"type\" field naming its section.");
+    }
+
+    private static List<String> split(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static long parseTime(String value) {
+        if (value.matches("-?\\d+")) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    /** Pulls the wanted sections out of a metadata.json and writes them as they are read. */
+    private static class Extractor {
+        private final JsonGenerator generator;
+
+        private final Set<String> include;
+
+        private final long from;
+
+        private final long to;
+
+        private final Set<String> operations;
+
+        private final boolean summaries;
+
+        private final Map<String, Object> table = new LinkedHashMap<>();
+
+        private long snapshots = 0;
+
+        private long written = 0;
+
+        Extractor(
+                JsonGenerator generator,
+                Set<String> include,
+                long from,
+                long to,
+                Set<String> operations,
+                boolean summaries) {
+            this.generator = generator;
+            this.include = include;
+            this.from = from;
+            this.to = to;
+            this.operations = operations;
+            this.summaries = summaries;
+        }
+
+        void extract(JsonParser parser) throws IOException {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (name.equals("snapshots") && include.contains("snapshots")) {
+                    expect(token, JsonToken.START_ARRAY, parser);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        readSnapshot(parser);
+                    }
+                } else if (name.equals("snapshot-log") && include.contains("snapshot-log")) {
+                    readLog(parser, "snapshot-log");
+                } else if (name.equals("metadata-log") && include.contains("metadata-log")) {
+                    readLog(parser, "metadata-log");
+                } else if (TABLE_FIELDS.contains(name) && include.contains("table")) {
+                    table.put(name, readValue(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (include.contains("table")) {
+                generator.writeStartObject();
+                generator.writeStringField("type", "table");
+                writeFields(table);
+                generator.writeEndObject();
+                written += 1;
+            }
+        }
+
+        private void readSnapshot(JsonParser parser) throws IOException {
+            expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            Map<String, Object> summary = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (name.equals("summary")) {
+                    expect(token, JsonToken.START_OBJECT, parser);
+                    summary = readSummary(parser);
+                } else if (name.equals("manifests")) {
+                    // inline v1 manifest paths are only counted
+                    expect(token, JsonToken.START_ARRAY, parser);
+                    int count = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                        count += 1;
+                    }
+                    snapshot.put("manifest-count", BigDecimal.valueOf(count));
+                } else {
+                    snapshot.put(name, readValue(parser));
+                }
+            }
+            snapshots += 1;
+
+            Object operation = summary == null ? null : summary.remove("operation");
+            if (!inRange(snapshot.get("timestamp-ms"))
+                    || (operations != null && !operations.contains(operation))) {
+                return;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("type", "snapshot");
+            if (operation != null) {
+                generator.writeStringField("operation", operation.toString());
+            }
+            writeFields(snapshot);
+            if (summaries && summary != null) {
+                generator.writeObjectFieldStart("summary");
+                writeFields(summary);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            written += 1;
+        }
+
+        /** Reads a summary, turning integer values into numbers; skips all but the operation. */
+        private Map<String, Object> readSummary(JsonParser parser) throws IOException {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (!summaries && !name.equals("operation")) {
+                    parser.skipChildren();
+                    continue;
+                }
+                Object value = readValue(parser);
+                if (value instanceof String && INTEGER.matcher((String) value).matches()) {
+                    value = new BigDecimal((String) value);
+                }
+                summary.put(name, value);
+            }
+            return summary;
+        }
+
+        private void readLog(JsonParser parser, String type) throws IOException {
+            expect(parser.currentToken(), JsonToken.START_ARRAY, parser);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+                @SuppressWarnings("unchecked")
+                Map<String, Object> entry = (Map<String, Object>) readValue(parser);
+                if (inRange(entry.get("timestamp-ms"))) {
+                    generator.writeStartObject();
+                    generator.writeStringField("type", type);
+                    writeFields(entry);
+                    generator.writeEndObject();
+                    written += 1;
+                }
+            }
+        }
+
+        private boolean inRange(Object timestamp) {
+            if (timestamp == null) {
+                return from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+            }
+            long ms = ((BigDecimal) timestamp).longValue();
+            return ms >= from && ms < to;
+        }
+
+        /** Reads a small value, numbers as BigDecimal so that they are written back unchanged. */
+        private Object readValue(JsonParser parser) throws IOException {
+            switch (parser.currentToken()) {
+                case START_OBJECT:
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.getCurrentName();
+                        parser.nextToken();
+                        map.put(name, readValue(parser));
+                    }
+                    return map;
+                case START_ARRAY:
+                    List<Object> list = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        list.add(readValue(parser));
+                    }
+                    return list;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return new BigDecimal(parser.getText());
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    return parser.getBooleanValue();
+                case VALUE_NULL:
+                    return null;
+                default:
+                    return parser.getText();
+            }
+        }
+
+        private static void expect(JsonToken actual, JsonToken expected, JsonParser parser)
+                throws IOException {
+            if (actual != expected) {
+                throw new IOException(
+                        "Expected "
+                                + expected
+                                + " but found "
+                                + actual
+                                + " at line "
+                                + parser.getCurrentLocation().getLineNr());
+            }
+        }
+
+        private void writeFields(Map<String, Object> fields) throws IOException {
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                generator.writeFieldName(field.getKey());
+                writeValue(field.getValue());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                generator.writeNull();
+            } else if (value instanceof Map) {
+                generator.writeStartObject();
+                writeFields((Map<String, Object>) value);
+                generator.writeEndObject();
+            } else if (value instanceof List) {
+                generator.writeStartArray();
+                for (Object item : (List<Object>) value) {
+                    writeValue(item);
+                }
+                generator.writeEndArray();
+            } else if (value instanceof BigDecimal) {
+                generator.writeNumber((BigDecimal) value);
+            } else if (value instanceof Boolean) {
+                generator.writeBoolean((Boolean) value);
+            } else {
+                generator.writeString(value.toString());
+            }
+        }
+    }
+}
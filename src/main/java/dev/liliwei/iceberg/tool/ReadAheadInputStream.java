@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sequential input stream that keeps several ranged reads of the following bytes in flight while
+ * the caller decodes the current range, so a high-latency filesystem costs one round trip per
+ * window instead of one per buffer refill.
+ *
+ * <p>Ranges are fixed-size rather than aligned to Avro blocks: finding block boundaries would
+ * need the very round trips this class hides, and a range of a few hundred KB covers several
+ * blocks of a typical manifest. Each in-flight range uses its own positioned stream, opened once
+ * and reused, so fetches do not contend for a single stream position.
+ *
+ * <p>It is enabled for every filesystem but the local one, and tuned with system properties:
+ *
+ * <ul>
+ *   <li>{@code iceberg.tools.read-ahead}: {@code auto} (default), {@code on} or {@code off}
+ *   <li>{@code iceberg.tools.read-ahead.window}: ranges in flight (default 4)
+ *   <li>{@code iceberg.tools.read-ahead.range-kb}: size of a range (default 1024)
+ *   <li>{@code iceberg.tools.read-ahead.memory-mb}: cap of the buffered bytes per stream, which
+ *       shrinks the window when needed (default 64)
+ * </ul>
+ */
+class ReadAheadInputStream extends InputStream {
+    static final String MODE_PROPERTY = "iceberg.tools.read-ahead";
+
+    static final String WINDOW_PROPERTY = "iceberg.tools.read-ahead.window";
+
+    static final String RANGE_PROPERTY = "iceberg.tools.read-ahead.range-kb";
+
+    static final String MEMORY_PROPERTY = "iceberg.tools.read-ahead.memory-mb";
+
+    private static final ExecutorService FETCHERS =
+            Executors.newCachedThreadPool(Util.daemonThreads("read-ahead"));
+
+    /** Set while a caller that bounds its own requests opens files on this thread. */
+    private static final ThreadLocal<Boolean> SUSPENDED = ThreadLocal.withInitial(() -> false);
+
+    private final FileSystem fs;
+
+    private final Path path;
+
+    private final long length;
+
+    private final int rangeSize;
+
+    private final int window;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /** Streams not used by a fetch right now; at most one per window slot is ever opened. */
+    private final ArrayDeque<FSDataInputStream> idle = new ArrayDeque<>();
+
+    private final List<FSDataInputStream> opened = new ArrayList<>();
+
+    private long nextFetch = 0;
+
+    private byte[] current = new byte[0];
+
+    private int pos = 0;
+
+    private boolean closed = false;
+
+    ReadAheadInputStream(
+            FileSystem fs, Path path, long length, int rangeSize, int window, long maxMemory) {
+        this.fs = fs;
+        this.path = path;
+        this.length = length;
+        this.rangeSize = rangeSize;
+        this.window = (int) Math.max(1, Math.min(window, maxMemory / rangeSize));
+    }
+
+    /** Opens the file with read-ahead if it is enabled for its filesystem, or plainly otherwise. */
+    static InputStream open(FileSystem fs, Path path) throws IOException {
+        String mode = System.getProperty(MODE_PROPERTY, "auto");
+        boolean enabled =
+                !SUSPENDED.get()
+                        && (mode.equals("on")
+                                || (mode.equals("auto") && !"file".equals(fs.getScheme())));
+        if (!enabled) {
+            return fs.open(path);
+        }
+        return new ReadAheadInputStream(
+                fs,
+                path,
+                fs.getFileStatus(path).getLen(),
+                Integer.getInteger(RANGE_PROPERTY, 1024) * 1024,
+                Integer.getInteger(WINDOW_PROPERTY, 4),
+                Integer.getInteger(MEMORY_PROPERTY, 64) * 1024L * 1024L);
+    }
+
+    /**
+     * Runs the call with read-ahead off for the files it opens on the current thread, so that
+     * each of them is read by a single sequential request stream, e.g. to count requests.
+     *
+     * @param call The call to run
+     * @throws Exception The exception thrown by the call
+     */
+    static <T> T withoutReadAhead(Callable<T> call) throws Exception {
+        boolean suspended = SUSPENDED.get();
+        SUSPENDED.set(true);
+        try {
+            return call.call();
+        } finally {
+            SUSPENDED.set(suspended);
+        }
+    }
+
+    int window() {
+        return window;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - pos;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        IOException failure = null;
+        for (FSDataInputStream stream : opened) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (pos < current.length) {
+            return true;
+        }
+        fill();
+        Future<byte[]> next = pending.poll();
+        if (next == null) {
+            return false;
+        }
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading " + path);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read " + path, e.getCause());
+        }
+        pos = 0;
+        // keep the window full while the caller works on the range just returned
+        fill();
+        return true;
+    }
+
+    private void fill() {
+        while (pending.size() < window && nextFetch < length) {
+            long offset = nextFetch;
+            int size = (int) Math.min(rangeSize, length - offset);
+            pending.add(FETCHERS.submit(() -> fetch(offset, size)));
+            nextFetch += size;
+        }
+    }
+
+    private byte[] fetch(long offset, int size) throws IOException {
+        FSDataInputStream stream = borrow();
+        try {
+            byte[] buffer = new byte[size];
+            stream.readFully(offset, buffer);
+            return buffer;
+        } finally {
+            release(stream);
+        }
+    }
+
+    private FSDataInputStream borrow() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (!idle.isEmpty()) {
+                return idle.poll();
+            }
+        }
+        // opened outside the lock, other fetches keep going meanwhile
+        FSDataInputStream stream = fs.open(path);
+        synchronized (this) {
+            opened.add(stream);
+            if (closed) {
+                stream.close();
+                throw new IOException("Stream closed");
+            }
+        }
+        return stream;
+    }
+
+    private synchronized void release(FSDataInputStream stream) {
+        if (!closed) {
+            idle.add(stream);
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.CountingOutputStream;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Rewrites the manifests of a snapshot into fewer manifests of a target size whose entries are
+ * clustered by partition, and prints the manifest list entries of the new manifests.
+ *
+ * <p>Manifests are grouped by content and partition spec, since only those can share a file. The
+ * manifests of a group are read in parallel and their entries are sorted by partition with a
+ * {@link BinaryRecordSorter}, which spills to disk when they do not fit in memory. As in Iceberg's
+ * own rewrite, added entries become existing ones and inherited snapshot ids and sequence numbers
+ * are written explicitly, so the new manifests can be committed by a later snapshot.
+ */
+public class RewriteManifestsTool implements Tool {
+    private int manifestsWritten = 0;
+
+    @Override
+    public String getName() {
+        return "rewrite-manifests";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Rewrites the manifests of a snapshot into fewer manifests sorted by partition.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts("snapshot-id", "Snapshot to rewrite (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Void> dropDeletedOption =
+                optionParser.accepts("drop-deleted", "Drops the entries of deleted files.");
+        OptionSpec<Integer> targetSizeOption =
+                optionParser
+                        .accepts("target-size-mb", "Target size of a new manifest.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(8);
+        OptionSpec<String> codecOption =
+                optionParser
+                        .accepts(
+                                "codec",
+                                "Compression codec: null, deflate, snappy, zstandard, bzip2 or"
+                                        + " xz.")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("deflate");
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of manifests read in parallel.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+        OptionSpec<Integer> memoryOption =
+                optionParser
+                        .accepts(
+                                "max-memory-mb",
+                                "Memory for sorting entries before spilling to disk.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(256);
+        OptionSpec<String> tmpDirOption =
+                optionParser
+                        .accepts("tmp-dir", "Directory of spilled sort runs.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        if (nargs.size() != 2) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+        CodecFactory codec;
+        try {
+            codec = CodecFactory.fromString(codecOption.value(optionSet));
+        } catch (AvroRuntimeException e) {
+            err.println("Unknown codec: " + codecOption.value(optionSet));
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        IcebergMetadata.SnapshotInfo snapshot =
+                optionSet.has(snapshotOption)
+                        ? metadata.snapshot(snapshotOption.value(optionSet))
+                        : metadata.currentSnapshot();
+        if (snapshot == null) {
+            err.println("Snapshot not found");
+            return 1;
+        }
+
+        Map<String, List<ManifestListReader.ManifestInfo>> groups = new LinkedHashMap<>();
+        for (ManifestListReader.ManifestInfo manifest : ManifestListReader.read(snapshot)) {
+            groups.computeIfAbsent(
+                            manifest.content() + "/" + manifest.specId(),
+                            k -> new ArrayList<>())
+                    .add(manifest);
+        }
+
+        Path outputDir = new Path(nargs.get(1));
+        FileSystem fs = outputDir.getFileSystem(Util.conf());
+        fs.mkdirs(outputDir);
+
+        JsonGenerator generator = Util.jsonLines(out);
+
+        Output output =
+                new Output(
+                        fs,
+                        outputDir,
+                        UUID.randomUUID().toString(),
+                        codec,
+                        targetSizeOption.value(optionSet) * 1024L * 1024L,
+                        generator);
+        int threads = threadsOption.value(optionSet);
+        long maxMemory = memoryOption.value(optionSet) * 1024L * 1024L;
+        File tmpDir =
+                optionSet.has(tmpDirOption) ? new File(tmpDirOption.value(optionSet)) : null;
+        boolean dropDeleted = optionSet.has(dropDeletedOption);
+
+        long read = 0;
+        long kept = 0;
+        int spilled = 0;
+        int manifests = 0;
+        for (List<ManifestListReader.ManifestInfo> group : groups.values()) {
+            Schema schema;
+            Map<String, byte[]> meta = new LinkedHashMap<>();
+            try (DataFileStream<GenericRecord> stream =
+                    Util.openAvroFile(group.get(0).path())) {
+                schema = stream.getSchema();
+                for (String key : stream.getMetaKeys()) {
+                    if (!key.startsWith("avro.")) {
+                        meta.put(key, stream.getMeta(key));
+                    }
+                }
+            }
+            Schema partitionSchema =
+                    schema.getField("data_file").schema().getField("partition").schema();
+
+            try (BinaryRecordSorter sorter =
+                    new BinaryRecordSorter(partitionSchema, maxMemory, threads, tmpDir)) {
+                List<Callable<long[]>> tasks = new ArrayList<>();
+                for (ManifestListReader.ManifestInfo manifest : group) {
+                    tasks.add(
+                            () ->
+                                    readManifest(
+                                            manifest,
+                                            schema,
+                                            partitionSchema,
+                                            dropDeleted,
+                                            sorter.writer()));
+                }
+                for (long[] counts : Util.runInParallel(tasks, threads)) {
+                    read += counts[0];
+                    kept += counts[1];
+                }
+                output.start(schema, meta, group.get(0).specId(), group.get(0).content());
+                sorter.forEachSorted(output);
+                output.finish();
+                spilled += sorter.spilledRuns();
+            }
+            manifests += group.size();
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Rewrote %d manifests with %d entries into %d manifests with %d entries,"
+                                + " %d sort runs spilled",
+                        manifests, read, manifestsWritten, kept, spilled));
+        return 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "rewrite-manifests [--snapshot-id=X] [--drop-deleted] [--target-size-mb=N]"
+                        + " [--codec=C] [--threads=N] [--max-memory-mb=N] [--tmp-dir=D]"
+                        + " metadata-json-file output-dir");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("The new manifests are written to output-dir and their manifest list entries");
+        ps.println("are printed as JSON lines; the table itself is not changed.");
+    }
+
+    /**
+     * Reads one manifest with the schema of its group and adds its entries to the sorter, keyed
+     * by partition. Returns the number of entries read and kept.
+     */
+    private static long[] readManifest(
+            ManifestListReader.ManifestInfo manifest,
+            Schema schema,
+            Schema partitionSchema,
+            boolean dropDeleted,
+            BinaryRecordSorter.Writer writer)
+            throws IOException {
+        GenericDatumWriter<GenericRecord> entryWriter = new GenericDatumWriter<>(schema);
+        GenericDatumWriter<GenericRecord> partitionWriter =
+                new GenericDatumWriter<>(partitionSchema);
+        ExposedByteArrayOutputStream key = new ExposedByteArrayOutputStream();
+        ExposedByteArrayOutputStream datum = new ExposedByteArrayOutputStream();
+        BinaryEncoder encoder = null;
+        long read = 0;
+        long kept = 0;
+
+        InputStream in = new BufferedInputStream(Util.openFromFS(manifest.path()));
+        GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>();
+        try (DataFileStream<GenericRecord> stream = new DataFileStream<>(in, reader)) {
+            reader.setExpected(schema);
+            GenericRecord entry = null;
+            while (stream.hasNext()) {
+                entry = stream.next(entry);
+                read += 1;
+                int status = ManifestEntries.status(entry);
+                if (status == ManifestEntries.STATUS_DELETED && dropDeleted) {
+                    continue;
+                }
+                if (status == ManifestEntries.STATUS_ADDED) {
+                    entry.put("status", ManifestEntries.STATUS_EXISTING);
+                }
+                inherit(entry, "snapshot_id", manifest.addedSnapshotId());
+                inherit(entry, "sequence_number", manifest.sequenceNumber());
+                inherit(entry, "file_sequence_number", manifest.sequenceNumber());
+
+                key.reset();
+                encoder = EncoderFactory.get().directBinaryEncoder(key, encoder);
+                partitionWriter.write(
+                        ManifestEntries.partition(ManifestEntries.dataFile(entry)), encoder);
+                datum.reset();
+                encoder = EncoderFactory.get().directBinaryEncoder(datum, encoder);
+                entryWriter.write(entry, encoder);
+                writer.add(key.buffer(), key.size(), datum.buffer(), datum.size());
+                kept += 1;
+            }
+        }
+        writer.finish();
+        return new long[] {read, kept};
+    }
+
+    /** Sets a field that the entry inherits from its manifest when it is null. */
+    private static void inherit(GenericRecord entry, String name, Object manifestValue) {
+        Schema.Field field = entry.getSchema().getField(name);
+        if (field != null && entry.get(field.pos()) == null) {
+            entry.put(field.pos(), manifestValue);
+        }
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /** Writes the sorted entries into manifests of the target size. */
+    private class Output implements BinaryRecordSorter.DatumConsumer {
+        private final FileSystem fs;
+
+        private final Path dir;
+
+        private final String prefix;
+
+        private final CodecFactory codec;
+
+        private final long targetBytes;
+
+        private final JsonGenerator generator;
+
+        private Schema schema;
+
+        private Map<String, byte[]> meta;
+
+        private int specId;
+
+        private int content;
+
+        private GenericDatumReader<GenericRecord> reader;
+
+        private BinaryDecoder decoder;
+
+        private GenericRecord entry;
+
+        private Path path;
+
+        private CountingOutputStream counting;
+
+        private DataFileWriter<GenericRecord> writer;
+
+        private ManifestSummary summary;
+
+        Output(
+                FileSystem fs,
+                Path dir,
+                String prefix,
+                CodecFactory codec,
+                long targetBytes,
+                JsonGenerator generator) {
+            this.fs = fs;
+            this.dir = dir;
+            this.prefix = prefix;
+            this.codec = codec;
+            this.targetBytes = targetBytes;
+            this.generator = generator;
+        }
+
+        /** Starts a new group of manifests sharing the given schema and metadata. */
+        void start(
+                Schema groupSchema,
+                Map<String, byte[]> groupMeta,
+                int groupSpecId,
+                int groupContent) {
+            this.schema = groupSchema;
+            this.meta = groupMeta;
+            this.specId = groupSpecId;
+            this.content = groupContent;
+            this.reader = new GenericDatumReader<>(groupSchema);
+            this.entry = null;
+        }
+
+        @Override
+        public void accept(byte[] item, int offset, int length) throws IOException {
+            decoder = DecoderFactory.get().binaryDecoder(item, offset, length, decoder);
+            entry = reader.read(entry, decoder);
+            if (writer == null) {
+                open();
+            }
+            writer.appendEncoded(ByteBuffer.wrap(item, offset, length));
+            summary.add(entry);
+            if (counting.getCount() >= targetBytes) {
+                finish();
+            }
+        }
+
+        private void open() throws IOException {
+            path = new Path(dir, prefix + "-m" + manifestsWritten + ".avro");
+            manifestsWritten += 1;
+            counting = new CountingOutputStream(fs.create(path, false));
+            writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema));
+            writer.setCodec(codec);
+            for (Map.Entry<String, byte[]> item : meta.entrySet()) {
+                writer.setMeta(item.getKey(), item.getValue());
+            }
+            writer.create(schema, counting);
+            summary =
+                    new ManifestSummary(
+                            schema.getField("data_file").schema().getField("partition").schema());
+        }
+
+        /** Closes the current manifest, if any, and prints its manifest list entry. */
+        void finish() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            writer.close();
+            writer = null;
+            generator.writeStartObject();
+            generator.writeStringField("manifest_path", path.toString());
+            generator.writeNumberField("manifest_length", counting.getCount());
+            generator.writeNumberField("partition_spec_id", specId);
+            generator.writeNumberField("content", content);
+            if (summary.minSequenceNumber != null) {
+                generator.writeNumberField("min_sequence_number", summary.minSequenceNumber);
+            }
+            generator.writeNumberField("added_files_count", 0);
+            generator.writeNumberField("existing_files_count", summary.existingFiles);
+            generator.writeNumberField("deleted_files_count", summary.deletedFiles);
+            generator.writeNumberField("added_rows_count", 0);
+            generator.writeNumberField("existing_rows_count", summary.existingRows);
+            generator.writeNumberField("deleted_rows_count", summary.deletedRows);
+            generator.writeArrayFieldStart("partitions");
+            for (int i = 0; i < summary.fields.size(); i++) {
+                generator.writeStartObject();
+                generator.writeBooleanField("contains_null", summary.containsNull[i]);
+                generator.writeBooleanField("contains_nan", summary.containsNan[i]);
+                if (summary.lower[i] != null) {
+                    generator.writeStringField("lower_bound", render(summary.lower[i]));
+                    generator.writeStringField("upper_bound", render(summary.upper[i]));
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    private static String render(Object value) {
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return BaseEncoding.base16().lowerCase().encode(bytes);
+        }
+        return value.toString();
+    }
+
+    /** File and row counts and partition field summaries of one new manifest. */
+    private static class ManifestSummary {
+        private final List<Schema.Field> fields;
+
+        private final boolean[] containsNull;
+
+        private final boolean[] containsNan;
+
+        private final Object[] lower;
+
+        private final Object[] upper;
+
+        private long existingFiles = 0;
+
+        private long deletedFiles = 0;
+
+        private long existingRows = 0;
+
+        private long deletedRows = 0;
+
+        private Long minSequenceNumber = null;
+
+        ManifestSummary(Schema partitionSchema) {
+            this.fields = partitionSchema.getFields();
+            this.containsNull = new boolean[fields.size()];
+            this.containsNan = new boolean[fields.size()];
+            this.lower = new Object[fields.size()];
+            this.upper = new Object[fields.size()];
+        }
+
+        void add(GenericRecord entry) {
+            GenericRecord dataFile = ManifestEntries.dataFile(entry);
+            long records = ManifestEntries.recordCount(dataFile);
+            if (ManifestEntries.status(entry) == ManifestEntries.STATUS_DELETED) {
+                deletedFiles += 1;
+                deletedRows += records;
+            } else {
+                existingFiles += 1;
+                existingRows += records;
+            }
+            Long sequenceNumber = ManifestEntries.sequenceNumber(entry);
+            if (sequenceNumber != null
+                    && (minSequenceNumber == null || sequenceNumber < minSequenceNumber)) {
+                minSequenceNumber = sequenceNumber;
+            }
+
+            GenericRecord partition = ManifestEntries.partition(dataFile);
+            for (int i = 0; i < fields.size(); i++) {
+                Object value = partition.get(i);
+                if (value == null) {
+                    containsNull[i] = true;
+                } else if ((value instanceof Double && ((Double) value).isNaN())
+                        || (value instanceof Float && ((Float) value).isNaN())) {
+                    containsNan[i] = true;
+                } else {
+                    Schema schema = fields.get(i).schema();
+                    GenericData data = GenericData.get();
+                    if (lower[i] == null || data.compare(value, lower[i], schema) < 0) {
+                        lower[i] = data.deepCopy(schema, value);
+                    }
+                    if (upper[i] == null || data.compare(value, upper[i], schema) > 0) {
+                        upper[i] = data.deepCopy(schema, value);
+                    }
+                }
+            }
+        }
+    }
+}
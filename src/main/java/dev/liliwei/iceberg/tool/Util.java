@@ -21,16 +21,56 @@
 
 package dev.liliwei.iceberg.tool;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
 import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.FsInput;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Static utility methods for tools. */
 public class Util {
+    /**
+     * The Hadoop configuration of all filesystem accesses. Loading the configuration resources is
+     * costly, so it is done once per JVM; the filesystems themselves are cached by Hadoop.
+     */
+    private static final Configuration CONF = new Configuration();
+
+    /** Returns the shared Hadoop configuration. */
+    static Configuration conf() {
+        return CONF;
+    }
+
     /**
      * Returns stdin if filename is "-", else opens the File in the owning filesystem and returns an
      * InputStream for it. Relative paths will be opened in the default filesystem.
@@ -45,14 +85,25 @@ public class Util {
 
     /**
      * Returns an InputStream for the file using the owning filesystem, or the default if none is
-     * given.
+     * given. Remote files are read through a {@link ReadAheadInputStream}.
      *
      * @param filename The filename to be opened
      * @throws IOException
      */
     static InputStream openFromFS(String filename) throws IOException {
         Path p = new Path(filename);
-        return p.getFileSystem(new Configuration()).open(p);
+        return ReadAheadInputStream.open(p.getFileSystem(CONF), p);
+    }
+
+    /**
+     * Returns a seekable input for the file using the owning filesystem, or the default if none is
+     * given.
+     *
+     * @param filename The filename to be opened
+     * @throws IOException
+     */
+    static SeekableInput openSeekableFromFS(String filename) throws IOException {
+        return new FsInput(new Path(filename), CONF);
     }
 
     /**
@@ -85,4 +136,179 @@ public class Util {
             close(stream);
         }
     }
+
+    /**
+     * Opens an Avro data file, such as a manifest or a manifest list, in the owning filesystem
+     * for generic record reads.
+     *
+     * @param filename The file to be opened
+     * @throws IOException
+     */
+    public static DataFileStream<GenericRecord> openAvroFile(String filename) throws IOException {
+        InputStream in = new BufferedInputStream(openFromFS(filename));
+        try {
+            return new DataFileStream<>(in, new GenericDatumReader<>());
+        } catch (IOException | RuntimeException e) {
+            close(in);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the tasks on a fixed pool of daemon threads and returns their results in task order.
+     * The first failure cancels the remaining tasks and is rethrown.
+     *
+     * @param tasks The tasks to run
+     * @param threads The number of worker threads
+     * @throws Exception The exception thrown by the first failed task
+     */
+    public static <T> List<T> runInParallel(List<? extends Callable<T>> tasks, int threads)
+            throws Exception {
+        ExecutorService pool = newPool(Math.max(1, Math.min(threads, tasks.size())), "worker");
+        try {
+            return runInParallel(tasks, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the tasks on the given pool and returns their results in task order. The first failure
+     * cancels the remaining tasks and is rethrown; the pool is left running for the next batch.
+     *
+     * @param tasks The tasks to run
+     * @param pool The pool to run them on
+     * @throws Exception The exception thrown by the first failed task
+     */
+    static <T> List<T> runInParallel(List<? extends Callable<T>> tasks, ExecutorService pool)
+            throws Exception {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return results;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Creates a fixed thread pool of daemon threads, so that a tool never keeps the JVM alive.
+     *
+     * @param threads The number of threads
+     * @param name The thread name prefix
+     */
+    static ExecutorService newPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, daemonThreads(name));
+    }
+
+    /**
+     * Returns a factory of daemon threads named after the given prefix.
+     *
+     * @param name The thread name prefix
+     */
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Replaces a local file through a temporary sibling and an atomic rename, so that a reader
+     * sees either the old or the new content, even after a crash. The sibling is synced to disk
+     * before the rename, so that the rename never exposes a file whose content was lost.
+     *
+     * @param file The file to replace
+     * @param content The new content
+     * @throws IOException
+     */
+    static void writeAtomically(java.nio.file.Path file, String content) throws IOException {
+        java.nio.file.Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel =
+                FileChannel.open(
+                        tmp,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(
+                tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the name prefix of the output files of the manifest with the given ordinal: the
+     * ordinal and the manifest file name without its extension. The names are numbered, since
+     * manifests of different tables may share a name.
+     *
+     * @param ordinal The index of the manifest among those written to one directory
+     * @param manifestPath The path of the manifest
+     */
+    static String outputPrefix(int ordinal, String manifestPath) {
+        String name = new Path(manifestPath).getName();
+        if (name.endsWith(".avro")) {
+            name = name.substring(0, name.length() - 5);
+        }
+        return String.format("%05d-%s", ordinal, name);
+    }
+
+    /**
+     * Returns the Jackson factory of a manifest2json output format: json, or the binary smile or
+     * cbor. Smile generators back-reference repeated field names and short string values, such as
+     * the partition values and file formats that recur across entries.
+     *
+     * @param format The format name
+     * @return The factory, or null if the format is unknown
+     */
+    static JsonFactory jsonFactory(String format) {
+        switch (format) {
+            case "json":
+                return new JsonFactory();
+            case "smile":
+                return SmileFactory.builder()
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                        .build();
+            case "cbor":
+                return new CBORFactory();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns a JSON generator that writes each root value on its own line, the output of the
+     * tools that print one object per result.
+     *
+     * @param out The stream to write to
+     * @throws IOException
+     */
+    static JsonGenerator jsonLines(OutputStream out) throws IOException {
+        JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+        MinimalPrettyPrinter pp = new MinimalPrettyPrinter();
+        pp.setRootValueSeparator(System.getProperty("line.separator"));
+        generator.setPrettyPrinter(pp);
+        return generator;
+    }
 }
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.BaseEncoding;
+
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.iceberg.types.Comparators;
+import org.apache.iceberg.types.Conversions;
+import org.apache.iceberg.types.Type;
+import org.apache.iceberg.types.Types;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeLogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeUnit;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimestampLogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Compares the metrics that manifests record for Parquet data files with the footers of the files.
+ *
+ * <p>Only the footer of each data file is read: its length is taken from the manifest, so opening
+ * a file needs no status request, and the row groups are never read. Footers are read on a pool
+ * of I/O threads while the manifests are streamed, with a bounded number of files in flight. The
+ * record count, and the value count, null count and bounds of every primitive top-level column
+ * are checked; bounds are decoded with the table's types as manifest2json does and compared with
+ * Iceberg's comparators, so truncated bounds that still enclose the footer's values pass.
+ */
+public class VerifyMetricsTool implements Tool {
+    private static final String[] DATA_FILE_FIELDS = {
+        "content",
+        "file_path",
+        "file_format",
+        "record_count",
+        "file_size_in_bytes",
+        "value_counts",
+        "null_value_counts",
+        "lower_bounds",
+        "upper_bounds"
+    };
+
+    private final AtomicLong verified = new AtomicLong();
+
+    private final AtomicLong mismatched = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private JsonGenerator generator;
+
+    private Map<Integer, Type.PrimitiveType> types;
+
+    private Map<Integer, String> names;
+
+    @Override
+    public String getName() {
+        return "verify-metrics";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Checks manifest record counts and column metrics against Parquet footers.";
+    }
+
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args)
+            throws Exception {
+        OptionParser optionParser = new OptionParser();
+        OptionSpec<Long> snapshotOption =
+                optionParser
+                        .accepts(
+                                "snapshot-id",
+                                "Snapshot whose data files are verified when no manifest file is"
+                                        + " given (default is the current one).")
+                        .withRequiredArg()
+                        .ofType(Long.class);
+        OptionSpec<Integer> threadsOption =
+                optionParser
+                        .accepts("threads", "Number of footers read concurrently.")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(32);
+
+        OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
+        List<String> nargs = new ArrayList<>((List<String>) optionSet.nonOptionArguments());
+        int threads = threadsOption.value(optionSet);
+        if (nargs.isEmpty() || threads <= 0) {
+            printHelp(err);
+            err.println();
+            optionParser.printHelpOn(err);
+            return 1;
+        }
+
+        IcebergMetadata metadata = IcebergMetadata.read(nargs.get(0));
+        List<String> paths = new ArrayList<>(nargs.subList(1, nargs.size()));
+        if (paths.isEmpty()) {
+            IcebergMetadata.SnapshotInfo snapshot =
+                    optionSet.has(snapshotOption)
+                            ? metadata.snapshot(snapshotOption.value(optionSet))
+                            : metadata.currentSnapshot();
+            if (snapshot == null) {
+                err.println("Snapshot not found");
+                return 1;
+            }
+            for (ManifestListReader.ManifestInfo manifest : ManifestListReader.read(snapshot)) {
+                if (manifest.content() == ManifestListReader.CONTENT_DATA) {
+                    paths.add(manifest.path());
+                }
+            }
+        }
+        this.types = new HashMap<>();
+        for (Map.Entry<Integer, String> field : metadata.fieldTypes().entrySet()) {
+            types.put(field.getKey(), Types.fromPrimitiveString(field.getValue()));
+        }
+        this.names = metadata.fieldNames();
+
+        this.generator = Util.jsonLines(out);
+
+        long start = System.nanoTime();
+        long skipped = 0;
+        // bounds the data files waiting for a thread, so memory does not grow with the table
+        int maxInFlight = threads * 4;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService pool = Util.newPool(threads, "verify-metrics");
+        try {
+            for (String path : paths) {
+                try (DataFileStream<GenericRecord> stream =
+                        ManifestEntries.openProjected(path, DATA_FILE_FIELDS)) {
+                    for (GenericRecord entry : stream) {
+                        GenericRecord dataFile = ManifestEntries.dataFile(entry);
+                        if (!ManifestEntries.isLive(entry)) {
+                            continue;
+                        }
+                        if (ManifestEntries.content(dataFile) != ManifestEntries.CONTENT_DATA
+                                || !"PARQUET"
+                                        .equalsIgnoreCase(
+                                                dataFile.get("file_format").toString())) {
+                            skipped += 1;
+                            continue;
+                        }
+                        inFlight.acquire();
+                        pool.execute(
+                                () -> {
+                                    try {
+                                        verify(dataFile);
+                                    } catch (RuntimeException e) {
+                                        failed.incrementAndGet();
+                                        error(ManifestEntries.filePath(dataFile), e);
+                                    } finally {
+                                        inFlight.release();
+                                    }
+                                });
+                    }
+                }
+            }
+            inFlight.acquire(maxInFlight);
+        } finally {
+            pool.shutdownNow();
+        }
+        generator.flush();
+        out.flush();
+
+        err.println(
+                String.format(
+                        "Verified %d data files in %d ms: %d with mismatches, %d unreadable,"
+                                + " %d skipped",
+                        verified.get(),
+                        (System.nanoTime() - start) / 1_000_000,
+                        mismatched.get(),
+                        failed.get(),
+                        skipped));
+        // non-zero when any file has a mismatch or could not be read, e.g. to fail a scheduled job
+        return mismatched.get() > 0 || failed.get() > 0 ? 1 : 0;
+    }
+
+    private void printHelp(PrintStream ps) {
+        ps.println(
+                "verify-metrics [--snapshot-id=X] [--threads=N] metadata-json-file"
+                        + " [manifest-file ...]");
+        ps.println();
+        ps.println(getShortDescription());
+        ps.println("Without manifest files, the data manifests of the snapshot are verified.");
+        ps.println("Writes a line per mismatch; files that are not Parquet are skipped.");
+        ps.println("Exits with 1 if a file has a mismatch or cannot be read.");
+    }
+
+    private void verify(GenericRecord dataFile) {
+        String path = ManifestEntries.filePath(dataFile);
+        ParquetMetadata footer;
+        try {
+            long length = ManifestEntries.fileSizeInBytes(dataFile);
+            FileStatus status = new FileStatus(length, false, 1, 0, 0, new Path(path));
+            try (ParquetFileReader reader =
+                    ParquetFileReader.open(HadoopInputFile.fromStatus(status, Util.conf()))) {
+                footer = reader.getFooter();
+            }
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            error(path, e);
+            return;
+        }
+
+        int mismatches = 0;
+        long rows = 0;
+        Map<Integer, ColumnStats> columns = new HashMap<>();
+        MessageType schema = footer.getFileMetaData().getSchema();
+        for (BlockMetaData block : footer.getBlocks()) {
+            rows += block.getRowCount();
+            for (ColumnChunkMetaData chunk : block.getColumns()) {
+                String[] columnPath = chunk.getPath().toArray();
+                if (columnPath.length != 1 || schema.getType(columnPath[0]).getId() == null) {
+                    continue;
+                }
+                int fieldId = schema.getType(columnPath[0]).getId().intValue();
+                Type.PrimitiveType type = types.get(fieldId);
+                if (type != null) {
+                    PrimitiveType parquetType = schema.getType(columnPath[0]).asPrimitiveType();
+                    columns.computeIfAbsent(fieldId, id -> new ColumnStats(type, parquetType))
+                            .add(chunk);
+                }
+            }
+        }
+
+        long recordCount = ManifestEntries.recordCount(dataFile);
+        if (recordCount != rows) {
+            mismatches += report(path, "record_count", null, recordCount, rows);
+        }
+        Map<Integer, Long> valueCounts = ManifestEntries.metricMap(dataFile, "value_counts");
+        Map<Integer, Long> nullCounts = ManifestEntries.metricMap(dataFile, "null_value_counts");
+        Map<Integer, ByteBuffer> lowers = ManifestEntries.metricMap(dataFile, "lower_bounds");
+        Map<Integer, ByteBuffer> uppers = ManifestEntries.metricMap(dataFile, "upper_bounds");
+        for (Map.Entry<Integer, ColumnStats> column : columns.entrySet()) {
+            int id = column.getKey();
+            ColumnStats stats = column.getValue();
+            Long valueCount = valueCounts.get(id);
+            if (valueCount != null && valueCount != stats.values) {
+                mismatches += report(path, "value_count", id, valueCount, stats.values);
+            }
+            Long nullCount = nullCounts.get(id);
+            if (nullCount != null && stats.nullsKnown && nullCount != stats.nulls) {
+                mismatches += report(path, "null_value_count", id, nullCount, stats.nulls);
+            }
+            if (!stats.boundsKnown || stats.min == null) {
+                continue;
+            }
+            Object lower = decode(stats.type, lowers.get(id));
+            if (lower != null && stats.comparator.compare(lower, stats.min) > 0) {
+                mismatches += report(path, "lower_bound", id, render(lower), render(stats.min));
+            }
+            Object upper = decode(stats.type, uppers.get(id));
+            if (upper != null && stats.comparator.compare(upper, stats.max) < 0) {
+                mismatches += report(path, "upper_bound", id, render(upper), render(stats.max));
+            }
+        }
+        verified.incrementAndGet();
+        if (mismatches > 0) {
+            mismatched.incrementAndGet();
+        }
+    }
+
+    private static Object decode(Type.PrimitiveType type, ByteBuffer bound) {
+        return bound == null ? null : Conversions.fromByteBuffer(type, bound.duplicate());
+    }
+
+    private static Object render(Object value) {
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return BaseEncoding.base16().encode(bytes);
+        }
+        return value instanceof Number || value instanceof Boolean ? value : value.toString();
+    }
+
+    /** Writes one mismatch and returns 1. */
+    private synchronized int report(
+            String path, String check, Integer fieldId, Object manifest, Object footer) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("file", path);
+            generator.writeStringField("check", check);
+            if (fieldId != null) {
+                generator.writeNumberField("field_id", fieldId);
+                generator.writeStringField("column", names.get(fieldId));
+            }
+            generator.writeObjectField("manifest", manifest);
+            generator.writeObjectField("footer", footer);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return 1;
+    }
+
+    /** Writes a data file whose footer could not be read or checked. */
+    private synchronized void error(String path, Exception error) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("file", path);
+            generator.writeStringField("check", "footer");
+            generator.writeStringField("error", error.toString());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The footer metrics of one column, summed or merged over the row groups. */
+    private static class ColumnStats {
+        private final Type.PrimitiveType type;
+
+        private final Comparator<Object> comparator;
+
+        /** Microseconds per unit of a time or timestamp column, or 0 if it has no usable unit. */
+        private final long micros;
+
+        private long values = 0;
+
+        private long nulls = 0;
+
+        private boolean nullsKnown = true;
+
+        private boolean boundsKnown = true;
+
+        private Object min;
+
+        private Object max;
+
+        @SuppressWarnings("unchecked")
+        ColumnStats(Type.PrimitiveType type, PrimitiveType parquetType) {
+            this.type = type;
+            this.comparator = (Comparator<Object>) (Comparator<?>) Comparators.forType(type);
+            this.micros = micros(parquetType);
+            // like Iceberg's own Parquet metrics, INT96 timestamps have no comparable bounds
+            this.boundsKnown =
+                    parquetType.getPrimitiveTypeName() != PrimitiveTypeName.INT96
+                            && (micros > 0
+                                    || (type.typeId() != Type.TypeID.TIME
+                                            && type.typeId() != Type.TypeID.TIMESTAMP));
+        }
+
+        /** Returns the microseconds per unit of a time column, 0 for units other than these. */
+        private static long micros(PrimitiveType parquetType) {
+            LogicalTypeAnnotation annotation = parquetType.getLogicalTypeAnnotation();
+            TimeUnit unit = null;
+            if (annotation instanceof TimestampLogicalTypeAnnotation) {
+                unit = ((TimestampLogicalTypeAnnotation) annotation).getUnit();
+            } else if (annotation instanceof TimeLogicalTypeAnnotation) {
+                unit = ((TimeLogicalTypeAnnotation) annotation).getUnit();
+            }
+            if (unit == TimeUnit.MILLIS) {
+                return 1000;
+            }
+            // a plain INT64 is taken as microseconds, the unit Iceberg writes
+            return unit == null || unit == TimeUnit.MICROS ? 1 : 0;
+        }
+
+        void add(ColumnChunkMetaData chunk) {
+            values += chunk.getValueCount();
+            Statistics<?> stats = chunk.getStatistics();
+            if (stats == null || stats.isEmpty()) {
+                nullsKnown = false;
+                boundsKnown = false;
+                return;
+            }
+            if (stats.isNumNullsSet()) {
+                nulls += stats.getNumNulls();
+            } else {
+                nullsKnown = false;
+            }
+            if (!boundsKnown) {
+                return;
+            }
+            if (!stats.hasNonNullValue()) {
+                // a row group of nulls has no bounds, but one with values must have them
+                boundsKnown &=
+                        stats.isNumNullsSet() && stats.getNumNulls() == chunk.getValueCount();
+                return;
+            }
+            Object chunkMin = convert(stats.genericGetMin());
+            Object chunkMax = convert(stats.genericGetMax());
+            if (chunkMin == null || chunkMax == null) {
+                boundsKnown = false;
+                return;
+            }
+            if (min == null || comparator.compare(chunkMin, min) < 0) {
+                min = chunkMin;
+            }
+            if (max == null || comparator.compare(chunkMax, max) > 0) {
+                max = chunkMax;
+            }
+        }
+
+        /**
+         * Converts a Parquet statistics value to the Java class Iceberg uses for the column type,
+         * or returns null if the value cannot be compared.
+         */
+        private Object convert(Object value) {
+            if (value instanceof Binary) {
+                return Conversions.fromByteBuffer(type, ((Binary) value).toByteBuffer());
+            }
+            switch (type.typeId()) {
+                case BOOLEAN:
+                case INTEGER:
+                case DATE:
+                case FLOAT:
+                    return value;
+                case LONG:
+                    return ((Number) value).longValue();
+                case TIME:
+                case TIMESTAMP:
+                    // Iceberg bounds are in microseconds, footers in the column's unit
+                    return ((Number) value).longValue() * micros;
+                case DOUBLE:
+                    return ((Number) value).doubleValue();
+                case DECIMAL:
+                    return new BigDecimal(
+                            BigInteger.valueOf(((Number) value).longValue()),
+                            ((Types.DecimalType) type).scale());
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.liliwei.iceberg.tool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+
+/**
+ * Local filesystem under the "slow" scheme that delays every read call, standing in for an
+ * object store with a high round-trip latency.
+ */
+public class SlowFileSystem extends RawLocalFileSystem {
+    static final String SCHEME = "slow";
+
+    static volatile long latencyMs = 20;
+
+    static final AtomicInteger READS = new AtomicInteger();
+
+    static final AtomicInteger MAX_CONCURRENT_READS = new AtomicInteger();
+
+    private static final AtomicInteger ACTIVE_READS = new AtomicInteger();
+
+    static void reset() {
+        READS.set(0);
+        MAX_CONCURRENT_READS.set(0);
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create(SCHEME + ":///");
+    }
+
+    @Override
+    public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+        return new FSDataInputStream(new SlowInputStream(super.open(f, bufferSize)));
+    }
+
+    private static class SlowInputStream extends FSInputStream {
+        private final FSDataInputStream in;
+
+        SlowInputStream(FSDataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            in.seek(pos);
+        }
+
+        @Override
+        public long getPos() throws IOException {
+            return in.getPos();
+        }
+
+        @Override
+        public boolean seekToNewSource(long targetPos) {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            delay();
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            delay();
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void delay() throws IOException {
+            READS.incrementAndGet();
+            int active = ACTIVE_READS.incrementAndGet();
+            MAX_CONCURRENT_READS.accumulateAndGet(active, Math::max);
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                ACTIVE_READS.decrementAndGet();
+            }
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package dev.liliwei.iceberg.tool;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
@@ -28,14 +31,56 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileStream;
 import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryData;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.iceberg.DataFile;
+import org.apache.iceberg.DataFiles;
+import org.apache.iceberg.DeleteFile;
+import org.apache.iceberg.FileMetadata;
+import org.apache.iceberg.ManifestFile;
+import org.apache.iceberg.ManifestFiles;
+import org.apache.iceberg.ManifestWriter;
+import org.apache.iceberg.PartitionSpec;
+import org.apache.iceberg.io.OutputFile;
+import org.apache.iceberg.types.Conversions;
+import org.apache.iceberg.types.Types;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.NanoTime;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
@@ -85,6 +130,100 @@ public class TestDataFileTools {
         jsonData = builder.toString();
     }
 
+    static final Path RESOURCES = Paths.get("src", "test", "resources");
+
+    static final String MANIFEST = "1702989a-f66f-423a-aaf1-a01b9a699685-m0.avro";
+
+    static final long SNAPSHOT_ID = 8115727803695877401L;
+
+    private static final Schema MANIFEST_LIST_SCHEMA =
+            SchemaBuilder.record("manifest_file")
+                    .fields()
+                    .requiredString("manifest_path")
+                    .requiredLong("manifest_length")
+                    .requiredInt("partition_spec_id")
+                    .optionalLong("added_snapshot_id")
+                    .endRecord();
+
+    /**
+     * Writes a table into a new directory whose current snapshot lists the given number of copies
+     * of the sample manifest, and returns the path of its metadata.json file.
+     */
+    static String writeTable(int manifestCopies) throws IOException {
+        File tableDir = DIR.newFolder();
+        File[] manifests = new File[manifestCopies];
+        for (int i = 0; i < manifestCopies; i++) {
+            manifests[i] = new File(tableDir, "m" + i + ".avro");
+            Files.copy(
+                    RESOURCES.resolve(MANIFEST),
+                    manifests[i].toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        return writeTable(tableDir, manifests);
+    }
+
+    /** Writes a table into tableDir whose current snapshot lists the given manifests. */
+    private static String writeTable(File tableDir, File... manifests) throws IOException {
+        File manifestList = new File(tableDir, "snap-" + SNAPSHOT_ID + ".avro");
+        try (DataFileWriter<GenericRecord> writer =
+                new DataFileWriter<>(new GenericDatumWriter<>(MANIFEST_LIST_SCHEMA))) {
+            writer.create(MANIFEST_LIST_SCHEMA, manifestList);
+            for (File manifest : manifests) {
+                GenericRecord record = new GenericData.Record(MANIFEST_LIST_SCHEMA);
+                record.put("manifest_path", manifest.getAbsolutePath());
+                record.put("manifest_length", manifest.length());
+                record.put("partition_spec_id", 0);
+                record.put("added_snapshot_id", SNAPSHOT_ID);
+                writer.append(record);
+            }
+        }
+        return writeMetadata(tableDir, manifestList);
+    }
+
+    /** Writes the sample metadata.json into tableDir with its snapshot on the manifest list. */
+    private static String writeMetadata(File tableDir, File manifestList) throws IOException {
+        String metadataJson =
+                new String(
+                                Files.readAllBytes(RESOURCES.resolve("v1.metadata.json")),
+                                StandardCharsets.UTF_8)
+                        .replaceAll(
+                                "\"manifest-list\" : \"[^\"]*\"",
+                                "\"manifest-list\" : \""
+                                        + manifestList.getAbsolutePath().replace("\\", "/")
+                                        + "\"");
+        File metadata = new File(tableDir, "v1.metadata.json");
+        Files.write(metadata.toPath(), metadataJson.getBytes(StandardCharsets.UTF_8));
+        return metadata.getAbsolutePath();
+    }
+
+    /**
+     * Copies the sample manifest with one block per entry, after passing each entry and its index
+     * to change, and returns the offsets of the blocks after the first.
+     */
+    private static List<Long> copyManifest(File target, BiConsumer<Integer, GenericRecord> change)
+            throws IOException {
+        List<Long> blocks = new ArrayList<>();
+        try (DataFileStream<GenericRecord> in =
+                        new DataFileStream<>(
+                                Files.newInputStream(RESOURCES.resolve(MANIFEST)),
+                                new GenericDatumReader<>());
+                DataFileWriter<GenericRecord> writer =
+                        new DataFileWriter<>(new GenericDatumWriter<>(in.getSchema()))) {
+            for (String key : in.getMetaKeys()) {
+                if (!key.startsWith("avro.")) {
+                    writer.setMeta(key, in.getMeta(key));
+                }
+            }
+            writer.create(in.getSchema(), target);
+            for (GenericRecord entry : in) {
+                change.accept(blocks.size(), entry);
+                writer.append(entry);
+                blocks.add(writer.sync());
+            }
+        }
+        return blocks;
+    }
+
     private String run(Tool tool, String... args) throws Exception {
         return run(tool, null, args);
     }
@@ -95,7 +234,7 @@ public class TestDataFileTools {
         tool.run(
                 stdin,
                 p, // stdout
-                null, // stderr
+                new PrintStream(new ByteArrayOutputStream()), // stderr
                 Arrays.asList(args));
         return baos.toString("UTF-8").replace("\r", "");
     }
@@ -137,4 +276,997 @@ public class TestDataFileTools {
         Assert.assertTrue(integerStringMap.containsKey(2));
         Assert.assertEquals(integerStringMap.get(2), "string");
     }
+
+    @Test
+    public void testFindDuplicates() throws Exception {
+        String single = run(new FindDuplicatesTool(), writeTable(1));
+        Assert.assertEquals("", single);
+
+        String duplicated = run(new FindDuplicatesTool(), "--max-memory-mb=1", writeTable(2));
+        String[] findings = duplicated.trim().split("\n");
+        Assert.assertEquals(2, findings.length);
+        for (String finding : findings) {
+            Assert.assertTrue(finding.startsWith("{\"finding\":\"duplicate\""));
+            Assert.assertTrue(finding.contains("\"snapshot_ids\":[" + SNAPSHOT_ID + "]"));
+        }
+
+        // a live entry next to the entry of the same snapshot that deleted the file
+        File tableDir = DIR.newFolder();
+        File live = new File(tableDir, "live.avro");
+        File delete = new File(tableDir, "delete.avro");
+        copyManifest(live, (i, entry) -> {});
+        copyManifest(delete, (i, entry) -> entry.put("status", ManifestEntries.STATUS_DELETED));
+        findings = run(new FindDuplicatesTool(), writeTable(tableDir, live, delete)).split("\n");
+        Assert.assertEquals(2, findings.length);
+        for (String finding : findings) {
+            Assert.assertTrue(finding.startsWith("{\"finding\":\"live-after-delete\""));
+        }
+
+        // added again by an expired snapshot without a delete in between
+        tableDir = DIR.newFolder();
+        File added = new File(tableDir, "added.avro");
+        File readded = new File(tableDir, "readded.avro");
+        copyManifest(added, (i, entry) -> {});
+        copyManifest(readded, (i, entry) -> entry.put("snapshot_id", 1L));
+        String output = run(new FindDuplicatesTool(), writeTable(tableDir, added, readded));
+        Assert.assertEquals(2, output.split("\"finding\":\"added-multiple-times\"").length - 1);
+        Assert.assertEquals(2, output.split("\"finding\":\"duplicate\"").length - 1);
+    }
+
+    @Test
+    public void testBoundsIndex() throws Exception {
+        String metadata = writeTable(1);
+        String indexDir = DIR.newFolder().getAbsolutePath();
+        Assert.assertTrue(
+                run(new BoundsIndexTool(), metadata, indexDir).contains("1 new segments"));
+        Assert.assertTrue(run(new BoundsIndexTool(), metadata, indexDir).contains("1 reused"));
+
+        String point = run(new BoundsQueryTool(), "--column=id", "--value=2", indexDir);
+        Assert.assertEquals(1, point.trim().split("\n").length);
+        Assert.assertTrue(point.contains("data=b"));
+
+        String byName = run(new BoundsQueryTool(), "--column=data", "--value=a", indexDir);
+        Assert.assertTrue(byName.contains("data=a") && !byName.contains("data=b"));
+
+        String range = run(new BoundsQueryTool(), "--column=1", "--min=0", "--max=5", indexDir);
+        Assert.assertEquals(2, range.trim().split("\n").length);
+
+        Assert.assertEquals("", run(new BoundsQueryTool(), "--column=id", "--value=3", indexDir));
+    }
+
+    @Test
+    public void testBoundsParse() {
+        Assert.assertEquals(
+                ByteBuffer.wrap(new byte[] {0x00, (byte) 0xff}),
+                BoundsIndex.parse(Types.BinaryType.get(), "00ff"));
+        Assert.assertEquals(
+                ByteBuffer.wrap(new byte[] {(byte) 0x80}),
+                BoundsIndex.parse(Types.FixedType.ofLength(1), "80"));
+        Assert.assertEquals(true, BoundsIndex.parse(Types.BooleanType.get(), "TRUE"));
+        try {
+            BoundsIndex.parse(Types.BooleanType.get(), "ture");
+            Assert.fail("A misspelled boolean must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testManifestStats() throws Exception {
+        String metadata = writeTable(2);
+        String byPartition = run(new ManifestStatsTool(), "--column=id", metadata);
+        String[] lines = byPartition.trim().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].contains("\"group\":\"data=a\""));
+        Assert.assertTrue(lines[0].contains("\"files\":2"));
+        Assert.assertTrue(lines[1].contains("\"min\":\"2\",\"max\":\"2\""));
+
+        String all = run(new ManifestStatsTool(), "--group-by=none", metadata);
+        Assert.assertTrue(all.contains("\"files\":4"));
+
+        String largest = run(new ManifestStatsTool(), "--largest=3", metadata);
+        Assert.assertEquals(3, largest.trim().split("\n").length);
+        Assert.assertTrue(largest.contains("data=a") && largest.contains("data=b"));
+    }
+
+    @Test
+    public void testBinaryBounds() {
+        ManifestEntryStore.BoundVector vector =
+                ManifestEntryStore.BoundVector.of(Types.BinaryType.get());
+        // the reader reuses one buffer for the bounds of every entry
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {(byte) 0xff});
+        vector.set(0, buffer, buffer);
+        buffer.put(0, (byte) 0x01);
+        vector.set(1, buffer, buffer);
+        Object[] min = new Object[1];
+        Object[] max = new Object[1];
+        vector.reduce(new int[] {0, 0}, 2, min, max);
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] {0x01}), min[0]);
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] {(byte) 0xff}), max[0]);
+    }
+
+    @Test
+    public void testReadToJsonOffsetAndTail() throws Exception {
+        File blocksFile = DIR.newFile("blocks.avro");
+        try (DataFileWriter<Object> writer =
+                new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            writer.setSyncInterval(32); // many small blocks
+            writer.create(schema, blocksFile);
+            for (int i = 0; i < 1000; ++i) {
+                writer.append(i);
+            }
+        }
+        String file = blocksFile.getAbsolutePath();
+        String metadata = RESOURCES.resolve("v1.metadata.json").toString();
+        ManifestFileReadTool tool = new ManifestFileReadTool();
+
+        Assert.assertEquals(
+                "[500,501,502]",
+                run(tool, "--offset=500", "--head=3", file, metadata).replace("\n", ""));
+        Assert.assertEquals(
+                "[10,11]", run(tool, "--range=10:12", file, metadata).replace("\n", ""));
+        for (String range : new String[] {"abc", "5", "10:5", "-1:3"}) {
+            Assert.assertEquals("", run(tool, "--range=" + range, file, metadata));
+        }
+        Assert.assertEquals(
+                "[997,998,999]", run(tool, "--tail=3", file, metadata).replace("\n", ""));
+        Assert.assertTrue(
+                run(tool, "--tail=2000", file, metadata).replace("\n", "").startsWith("[0,1,"));
+        Assert.assertEquals(
+                "[]", run(tool, "--offset=1000", file, metadata).replace("\n", ""));
+        // a zero offset or range start still conflicts with --tail and --sample
+        for (String[] options :
+                new String[][] {
+                    {"--range=0:5", "--tail=2"},
+                    {"--offset=0", "--tail=2"},
+                    {"--range=0:5", "--sample=0.5"},
+                    {"--offset=0", "--sample=0.5"}
+                }) {
+            Assert.assertEquals("", run(tool, options[0], options[1], file, metadata));
+        }
+
+        String sample = run(tool, "--sample=0.1", "--seed=1", file, metadata);
+        Assert.assertEquals(sample, run(tool, "--sample=0.1", "--seed=1", file, metadata));
+        String[] blocks = sample.split("\\{\"block_offset\"");
+        Assert.assertTrue(blocks.length > 2 && blocks.length < 1000);
+        Assert.assertTrue(sample.contains("\"weight\":"));
+        String all = run(tool, "--sample=1", file, metadata).replace("\n", "");
+        Assert.assertFalse(all.replace("\"weight\":1.0,", "").contains("\"weight\":"));
+        Assert.assertTrue(all.startsWith("[{\"block_offset\":") && all.endsWith(",999]}]"));
+    }
+
+    @Test
+    public void testSampleWeights() throws Exception {
+        // blocks of 4 to 20 records, so that they are chosen with different probabilities
+        File blocksFile = DIR.newFile("sampled.avro");
+        List<Long> offsets = new ArrayList<>();
+        int total = 0;
+        try (DataFileWriter<Object> writer =
+                new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            writer.create(schema, blocksFile);
+            offsets.add(writer.sync());
+            for (int block = 0; block < 40; block++) {
+                for (int i = 0; i < 4 + 4 * (block % 5); i++) {
+                    writer.append(total++);
+                }
+                offsets.add(writer.sync());
+            }
+        }
+        offsets.remove(offsets.size() - 1);
+        String file = blocksFile.getAbsolutePath();
+        String metadata = RESOURCES.resolve("v1.metadata.json").toString();
+
+        // chosen count times weight estimates the number of runs for every block
+        int runs = 1000;
+        Map<Long, Double> estimates = new HashMap<>();
+        double records = 0;
+        for (int seed = 0; seed < runs; seed++) {
+            String sample =
+                    run(
+                            new ManifestFileReadTool(),
+                            "--sample=0.25",
+                            "--seed=" + seed,
+                            file,
+                            metadata);
+            for (JsonElement element : JsonParser.parseString(sample).getAsJsonArray()) {
+                JsonObject block = element.getAsJsonObject();
+                double weight = block.get("weight").getAsDouble();
+                Assert.assertTrue(weight >= 1);
+                estimates.merge(block.get("block_offset").getAsLong(), weight, Double::sum);
+                records += weight * block.get("block_records").getAsLong();
+            }
+        }
+        Assert.assertEquals(offsets, new ArrayList<>(new TreeMap<>(estimates).keySet()));
+        for (double estimate : estimates.values()) {
+            Assert.assertEquals(1, estimate / runs, 0.25);
+        }
+        Assert.assertEquals(total, records / runs, total * 0.05);
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        String local = RESOURCES.resolve(MANIFEST).toAbsolutePath().toString();
+        String metadata = RESOURCES.resolve("v1.metadata.json").toString();
+        String expected = run(new ManifestFileReadTool(), local, metadata);
+
+        System.setProperty(ReadAheadInputStream.RANGE_PROPERTY, "1");
+        SlowFileSystem.reset();
+        try {
+            String slow =
+                    run(
+                            new ManifestFileReadTool(),
+                            SlowFileSystem.SCHEME + "://" + local,
+                            metadata);
+            Assert.assertEquals(expected, slow);
+            Assert.assertTrue(SlowFileSystem.MAX_CONCURRENT_READS.get() > 1);
+        } finally {
+            System.clearProperty(ReadAheadInputStream.RANGE_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testCrawl() throws Exception {
+        File warehouse = DIR.newFolder();
+        for (String table : new String[] {"db/t1", "db/t2"}) {
+            File metadataDir = new File(warehouse, table + "/metadata");
+            Assert.assertTrue(metadataDir.mkdirs());
+            Files.copy(Paths.get(writeTable(1)), metadataDir.toPath().resolve("v1.metadata.json"));
+        }
+        File broken = new File(warehouse, "db/broken/metadata");
+        Assert.assertTrue(broken.mkdirs());
+        Files.write(
+                broken.toPath().resolve("v1.metadata.json"),
+                "{".getBytes(StandardCharsets.UTF_8));
+
+        String output =
+                run(new CrawlTool(), "--max-concurrent-per-fs=2", warehouse.getAbsolutePath());
+        String[] lines = output.trim().split("\n");
+        Assert.assertEquals(3, lines.length);
+        int summaries = 0;
+        for (String line : lines) {
+            if (line.contains("\"data_files\":2")) {
+                summaries += 1;
+            } else {
+                Assert.assertTrue(line.contains("broken") && line.contains("\"error\""));
+            }
+        }
+        Assert.assertEquals(2, summaries);
+    }
+
+    @Test
+    public void testRewriteManifests() throws Exception {
+        String metadata = writeTable(3);
+        File outputDir = DIR.newFolder();
+        String output =
+                run(
+                        new RewriteManifestsTool(),
+                        "--max-memory-mb=1",
+                        "--threads=2",
+                        metadata,
+                        outputDir.getAbsolutePath());
+        String[] lines = output.trim().split("\n");
+        Assert.assertEquals(1, lines.length);
+        Assert.assertTrue(lines[0].contains("\"existing_files_count\":6"));
+        Assert.assertTrue(lines[0].contains("\"added_files_count\":0"));
+        Assert.assertTrue(lines[0].contains("\"lower_bound\":\"a\",\"upper_bound\":\"b\""));
+
+        File[] manifests = outputDir.listFiles((dir, name) -> name.endsWith(".avro"));
+        Assert.assertEquals(1, manifests.length);
+        List<String> partitions = new ArrayList<>();
+        try (DataFileStream<GenericRecord> stream = Util.openAvroFile(manifests[0].getPath())) {
+            for (GenericRecord entry : stream) {
+                Assert.assertEquals(ManifestEntries.STATUS_EXISTING, ManifestEntries.status(entry));
+                Assert.assertEquals(SNAPSHOT_ID, (long) ManifestEntries.snapshotId(entry));
+                partitions.add(
+                        ManifestEntries.partition(ManifestEntries.dataFile(entry)).toString());
+            }
+        }
+        Assert.assertEquals(6, partitions.size());
+        List<String> sorted = new ArrayList<>(partitions);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, partitions);
+    }
+
+    @Test
+    public void testSorterMergePasses() throws Exception {
+        // without a memory budget every finished writer spills, 20 runs merged 3 at a time
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> sorted = new ArrayList<>();
+        try (BinaryRecordSorter sorter =
+                new BinaryRecordSorter(Schema.create(Type.INT), 0, 1, DIR.newFolder(), 3)) {
+            Random random = new Random(42);
+            byte[] key = new byte[5];
+            for (int run = 0; run < 20; run++) {
+                BinaryRecordSorter.Writer writer = sorter.writer();
+                for (int i = 0; i < 10; i++) {
+                    int value = random.nextInt(1000);
+                    expected.add(value);
+                    int keyLength = BinaryData.encodeInt(value, key, 0);
+                    writer.add(key, keyLength, key, keyLength);
+                }
+                writer.finish();
+            }
+            Assert.assertEquals(20, sorter.spilledRuns());
+            sorter.forEachSorted(
+                    (item, offset, length) ->
+                            sorted.add(
+                                    DecoderFactory.get()
+                                            .binaryDecoder(item, offset, length, null)
+                                            .readInt()));
+        }
+        Collections.sort(expected);
+        Assert.assertEquals(expected, sorted);
+    }
+
+    @Test
+    public void testPairSorterMergePasses() throws Exception {
+        // the minimum buffer of 1024 pairs spills 20 runs, merged 3 at a time
+        List<Long> expected = new ArrayList<>();
+        List<Long> sorted = new ArrayList<>();
+        try (LongPairSorter sorter = new LongPairSorter(0, DIR.newFolder(), 3)) {
+            Random random = new Random(42);
+            for (int i = 0; i < 20 * 1024 + 100; i++) {
+                long key = random.nextInt(1000);
+                expected.add(key * 1_000_000 + i);
+                sorter.add(key, i);
+            }
+            Assert.assertEquals(20, sorter.spilledRuns());
+            sorter.forEachSorted((key, value) -> sorted.add(key * 1_000_000 + value));
+        }
+        Collections.sort(expected);
+        Assert.assertEquals(expected, sorted);
+    }
+
+    @Test
+    public void testJsonToManifest() throws Exception {
+        String manifest = RESOURCES.resolve(MANIFEST).toString();
+        String metadata = RESOURCES.resolve("v1.metadata.json").toString();
+        String json = run(new ManifestFileReadTool(), manifest, metadata);
+        File jsonFile = DIR.newFile("manifest.json");
+        Files.write(jsonFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+
+        File derived = new File(DIR.getRoot(), "derived.avro");
+        run(
+                new JsonToManifestTool(),
+                jsonFile.getAbsolutePath(),
+                metadata,
+                derived.getAbsolutePath());
+        Assert.assertEquals(
+                json, run(new ManifestFileReadTool(), derived.getAbsolutePath(), metadata));
+
+        File copied = new File(DIR.getRoot(), "copied.avro");
+        run(
+                new JsonToManifestTool(),
+                "--template=" + manifest,
+                "--codec=null",
+                jsonFile.getAbsolutePath(),
+                metadata,
+                copied.getAbsolutePath());
+        Assert.assertEquals(
+                json, run(new ManifestFileReadTool(), copied.getAbsolutePath(), metadata));
+
+        // a truncated input leaves neither the output nor its temporary file behind
+        File truncatedDir = DIR.newFolder();
+        File truncated = new File(truncatedDir, "truncated.json");
+        Files.write(
+                truncated.toPath(),
+                json.substring(0, json.length() / 2).getBytes(StandardCharsets.UTF_8));
+        run(
+                new JsonToManifestTool(),
+                truncated.getAbsolutePath(),
+                metadata,
+                new File(truncatedDir, "truncated.avro").getAbsolutePath());
+        Assert.assertArrayEquals(new String[] {"truncated.json"}, truncatedDir.list());
+
+        // a hand-edited decimal bound keeps its value, typos are rejected rather than coerced
+        String decimal = "value:1.5;type:decimal(9, 2)";
+        File edited = new File(DIR.newFolder(), "edited.avro");
+        Assert.assertTrue(convertEdited(json, decimal, edited));
+        try (DataFileStream<GenericRecord> stream =
+                new DataFileStream<>(
+                        Files.newInputStream(edited.toPath()), new GenericDatumReader<>())) {
+            GenericRecord dataFile = (GenericRecord) stream.next().get("data_file");
+            for (Object item : (Collection<?>) dataFile.get("lower_bounds")) {
+                GenericRecord pair = (GenericRecord) item;
+                if (((Number) pair.get("key")).intValue() == 1) {
+                    Assert.assertEquals(
+                            new BigDecimal("1.50"),
+                            Conversions.fromByteBuffer(
+                                    Types.DecimalType.of(9, 2), (ByteBuffer) pair.get("value")));
+                }
+            }
+        }
+        for (String invalid :
+                new String[] {"value:1.555;type:decimal(9, 2)", "value:yes;type:boolean"}) {
+            File rejected = new File(DIR.newFolder(), "rejected.avro");
+            Assert.assertFalse(convertEdited(json, invalid, rejected));
+            Assert.assertFalse(rejected.exists());
+        }
+    }
+
+    /**
+     * Runs json2manifest on the manifest2json output with the lower bound of field 1 of the first
+     * entry replaced, and returns whether it succeeded.
+     */
+    private static boolean convertEdited(String json, String bound, File output) throws Exception {
+        File input = new File(output.getParentFile(), "edited.json");
+        Files.write(
+                input.toPath(),
+                json.replaceFirst(
+                                "\\{\"key\":1,\"value\":\"[^\"]*\"}",
+                                "{\"key\":1,\"value\":\"" + bound + "\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+        return new JsonToManifestTool()
+                        .run(
+                                null,
+                                new PrintStream(new ByteArrayOutputStream()),
+                                new PrintStream(new ByteArrayOutputStream()),
+                                Arrays.asList(
+                                        input.getAbsolutePath(),
+                                        RESOURCES.resolve("v1.metadata.json").toString(),
+                                        output.getAbsolutePath()))
+                == 0;
+    }
+
+    @Test
+    public void testBinaryFormats() throws Exception {
+        String manifest = RESOURCES.resolve(MANIFEST).toString();
+        String metadata = RESOURCES.resolve("v1.metadata.json").toString();
+        String json = run(new ManifestFileReadTool(), manifest, metadata);
+        for (String format : new String[] {"smile", "cbor"}) {
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            new ManifestFileReadTool()
+                    .run(
+                            null,
+                            new PrintStream(binary),
+                            new PrintStream(new ByteArrayOutputStream()),
+                            Arrays.asList("--format=" + format, manifest, metadata));
+            Assert.assertTrue(binary.size() < json.length());
+            File binaryFile = DIR.newFile("manifest." + format);
+            Files.write(binaryFile.toPath(), binary.toByteArray());
+
+            File derived = new File(DIR.getRoot(), format + ".avro");
+            run(
+                    new JsonToManifestTool(),
+                    "--format=" + format,
+                    binaryFile.getAbsolutePath(),
+                    metadata,
+                    derived.getAbsolutePath());
+            Assert.assertEquals(
+                    json, run(new ManifestFileReadTool(), derived.getAbsolutePath(), metadata));
+        }
+    }
+
+    @Test
+    public void testManifestToParquet() throws Exception {
+        String metadata = writeTable(2);
+        File outputDir = DIR.newFolder();
+        String output =
+                run(new ManifestToParquetTool(), "--threads=2", metadata, outputDir.getPath());
+        String[] lines = output.trim().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].contains("\"entries\":2"));
+
+        File[] files = outputDir.listFiles((dir, name) -> name.endsWith(".parquet"));
+        Assert.assertEquals(2, files.length);
+        List<String> rows = new ArrayList<>();
+        try (ParquetReader<Group> reader =
+                ParquetReader.builder(
+                                new GroupReadSupport(),
+                                new org.apache.hadoop.fs.Path(files[0].getPath()))
+                        .build()) {
+            for (Group row = reader.read(); row != null; row = reader.read()) {
+                Assert.assertEquals(SNAPSHOT_ID, row.getLong("snapshot_id", 0));
+                Assert.assertEquals(1, row.getLong("record_count", 0));
+                Group metrics = row.getGroup("metrics", 0);
+                rows.add(
+                        row.getGroup("partition", 0).getString("data", 0)
+                                + ":"
+                                + metrics.getGroup("id", 0).getLong("lower_bound", 0)
+                                + ":"
+                                + metrics.getGroup("data", 0).getString("upper_bound", 0));
+            }
+        }
+        Assert.assertEquals(Arrays.asList("a:1:a", "b:2:b"), rows);
+    }
+
+    @Test
+    public void testMetadataToJson() throws Exception {
+        String template =
+                new String(
+                        Files.readAllBytes(RESOURCES.resolve("v1.metadata.json")),
+                        StandardCharsets.UTF_8);
+        StringBuilder snapshots = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            String operation = i == 1 ? "delete" : "append";
+            snapshots
+                    .append(i == 0 ? "" : ",")
+                    .append("{\"snapshot-id\":")
+                    .append(i + 1)
+                    .append(",\"timestamp-ms\":")
+                    .append(1000 * (i + 1))
+                    .append(",\"summary\":{\"operation\":\"")
+                    .append(operation)
+                    .append("\",\"added-records\":\"")
+                    .append(10 * i)
+                    .append("\"},\"manifest-list\":\"snap.avro\"}");
+        }
+        String json =
+                template.replaceFirst(
+                        "\"snapshots\" : \\[",
+                        Matcher.quoteReplacement("\"snapshots\" : [" + snapshots + ","));
+        File metadata = DIR.newFile("many-snapshots.metadata.json");
+        Files.write(metadata.toPath(), json.getBytes(StandardCharsets.UTF_8));
+
+        String[] all = run(new MetadataToJsonTool(), metadata.getPath()).trim().split("\n");
+        Assert.assertEquals(5, all.length);
+        Assert.assertTrue(all[0].startsWith("{\"type\":\"snapshot\",\"operation\":\"append\""));
+        Assert.assertTrue(all[1].contains("\"summary\":{\"added-records\":10}"));
+        Assert.assertTrue(all[4].startsWith("{\"type\":\"snapshot-log\""));
+
+        String deletes =
+                run(
+                        new MetadataToJsonTool(),
+                        "--operation=delete",
+                        "--include=snapshots",
+                        "--no-summary",
+                        metadata.getPath());
+        Assert.assertEquals(
+                "{\"type\":\"snapshot\",\"operation\":\"delete\",\"snapshot-id\":2,"
+                        + "\"timestamp-ms\":2000,\"manifest-list\":\"snap.avro\"}",
+                deletes.trim());
+
+        String range =
+                run(
+                        new MetadataToJsonTool(),
+                        "--from=2000",
+                        "--to=1970-01-01T00:00:03Z",
+                        "--include=snapshots",
+                        metadata.getPath());
+        Assert.assertEquals(1, range.trim().split("\n").length);
+        Assert.assertTrue(range.contains("\"snapshot-id\":2,"));
+    }
+
+    @Test
+    public void testFollow() throws Exception {
+        String tableDir = new File(writeTable(1)).getParent();
+        String checkpoint = new File(DIR.newFolder(), "checkpoint.json").getAbsolutePath();
+
+        Assert.assertEquals("", run(new FollowTool(), "--once", tableDir));
+
+        String[] lines =
+                run(
+                                new FollowTool(),
+                                "--once",
+                                "--from-beginning",
+                                "--checkpoint=" + checkpoint,
+                                tableDir)
+                        .trim()
+                        .split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0].startsWith("{\"type\":\"snapshot\",\"snapshot_id\":"));
+        Assert.assertTrue(lines[0].contains("\"manifests\":1"));
+        for (int i = 1; i < lines.length; i++) {
+            Assert.assertTrue(lines[i].startsWith("{\"type\":\"entry\""));
+            Assert.assertTrue(lines[i].contains("\"entry\":{\"status\":1"));
+        }
+
+        Assert.assertEquals(
+                "",
+                run(
+                        new FollowTool(),
+                        "--once",
+                        "--from-beginning",
+                        "--checkpoint=" + checkpoint,
+                        tableDir));
+    }
+
+    @Test
+    public void testDumpManifests() throws Exception {
+        // one block per entry, so that a shard can end within the manifest
+        File manifest = new File(DIR.newFolder(), "blocks.avro");
+        long secondBlock = copyManifest(manifest, (i, entry) -> {}).get(0);
+        String metadata = writeTable(1);
+        File outputDir = DIR.newFolder();
+        String checkpoint = new File(DIR.newFolder(), "checkpoint.json").getAbsolutePath();
+        String[] args = {
+            "--shard-entries=1",
+            "--checkpoint=" + checkpoint,
+            metadata,
+            outputDir.getAbsolutePath(),
+            manifest.getAbsolutePath()
+        };
+
+        String output = run(new DumpManifestsTool(), args);
+        Assert.assertTrue(output.contains("\"shards\":2,\"entries\":2"));
+        Path first = outputDir.toPath().resolve("00000-blocks.00000.json");
+        Path second = outputDir.toPath().resolve("00000-blocks.00001.json");
+        Assert.assertEquals(1, Files.readAllLines(second).size());
+        Assert.assertTrue(Files.readAllLines(second).get(0).startsWith("{\"status\":1,"));
+
+        Assert.assertTrue(
+                new String(Files.readAllBytes(Paths.get(checkpoint)), StandardCharsets.UTF_8)
+                        .contains("\"done\":true"));
+        Assert.assertFalse(Files.exists(Paths.get(checkpoint + ".log")));
+
+        // interrupted after the first shard, while writing the log line of the second one: only
+        // the second shard is written again
+        Files.write(first, "kept\n".getBytes(StandardCharsets.UTF_8));
+        Files.delete(second);
+        Files.delete(Paths.get(checkpoint));
+        Files.write(
+                Paths.get(checkpoint + ".log"),
+                String.format(
+                                "{\"next_block\":%d,\"shards\":1,\"entries\":1,\"done\":false,"
+                                        + "\"manifest\":\"%s\"}\n{\"next_block\":",
+                                secondBlock, manifest.getAbsolutePath())
+                        .getBytes(StandardCharsets.UTF_8));
+        output = run(new DumpManifestsTool(), args);
+        Assert.assertTrue(output.contains("\"shards\":2,\"entries\":2"));
+        Assert.assertEquals(Collections.singletonList("kept"), Files.readAllLines(first));
+        Assert.assertEquals(1, Files.readAllLines(second).size());
+
+        Assert.assertEquals("", run(new DumpManifestsTool(), args));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        String manifest = RESOURCES.resolve(MANIFEST).toString();
+        String metadata = RESOURCES.resolve("v1.metadata.json").toString();
+        File commands = new File(DIR.newFolder(), "commands.txt");
+        Files.write(
+                commands.toPath(),
+                Arrays.asList(
+                        "# dumps",
+                        "manifest2json --head=1 '" + manifest + "' \"" + metadata + "\"",
+                        "",
+                        "manifest2json --tail=1 " + manifest + " " + metadata,
+                        "metadata2json " + metadata),
+                StandardCharsets.UTF_8);
+        File outputDir = DIR.newFolder();
+
+        String[] lines =
+                run(
+                                new BatchTool(new Main()::newTool),
+                                "--threads=2",
+                                commands.getAbsolutePath(),
+                                outputDir.getAbsolutePath())
+                        .trim()
+                        .split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(
+                lines[0].startsWith("{\"line\":2,\"tool\":\"manifest2json\",\"exit_code\":0"));
+        Assert.assertTrue(lines[2].startsWith("{\"line\":5,\"tool\":\"metadata2json\""));
+        String head =
+                new String(
+                        Files.readAllBytes(outputDir.toPath().resolve("00000-manifest2json.out")),
+                        StandardCharsets.UTF_8);
+        String tail =
+                new String(
+                        Files.readAllBytes(outputDir.toPath().resolve("00001-manifest2json.out")),
+                        StandardCharsets.UTF_8);
+        Assert.assertTrue(head.contains("data=a") && !head.contains("data=b"));
+        Assert.assertTrue(tail.contains("data=b") && !tail.contains("data=a"));
+
+        Files.write(commands.toPath(), Arrays.asList("batch x y"), StandardCharsets.UTF_8);
+        Assert.assertEquals(
+                "",
+                run(
+                        new BatchTool(new Main()::newTool),
+                        commands.getAbsolutePath(),
+                        outputDir.getAbsolutePath()));
+    }
+
+    @Test
+    public void testVerifyMetrics() throws Exception {
+        MessageType schema =
+                org.apache.parquet.schema.Types.buildMessage()
+                        .optional(PrimitiveTypeName.INT64)
+                        .id(1)
+                        .named("id")
+                        .optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.stringType())
+                        .id(2)
+                        .named("data")
+                        .named("table");
+        // the first file matches its entry, the second has an extra row with a larger id
+        File dir = DIR.newFolder();
+        File[] files = {new File(dir, "a.parquet"), new File(dir, "b.parquet")};
+        long[][] ids = {{1}, {2, 5}};
+        String[] data = {"a", "b"};
+        for (int i = 0; i < files.length; i++) {
+            try (ParquetWriter<Group> writer =
+                    ExampleParquetWriter.builder(
+                                    new org.apache.hadoop.fs.Path(files[i].getAbsolutePath()))
+                            .withType(schema)
+                            .build()) {
+                for (long id : ids[i]) {
+                    writer.write(
+                            new SimpleGroupFactory(schema)
+                                    .newGroup()
+                                    .append("id", id)
+                                    .append("data", data[i]));
+                }
+            }
+        }
+        File manifest = new File(dir, "manifest.avro");
+        copyManifest(
+                manifest,
+                (i, entry) -> {
+                    GenericRecord dataFile = (GenericRecord) entry.get("data_file");
+                    dataFile.put("file_path", files[i].getAbsolutePath());
+                    dataFile.put("file_size_in_bytes", files[i].length());
+                });
+
+        String output =
+                run(
+                        new VerifyMetricsTool(),
+                        "--threads=2",
+                        RESOURCES.resolve("v1.metadata.json").toString(),
+                        manifest.getAbsolutePath());
+        Assert.assertFalse(output.contains("a.parquet"));
+        Assert.assertTrue(
+                output.contains("\"check\":\"record_count\",\"manifest\":1,\"footer\":2"));
+        Assert.assertTrue(
+                output.contains(
+                        "\"check\":\"upper_bound\",\"field_id\":1,\"column\":\"id\","
+                                + "\"manifest\":2,\"footer\":5"));
+        Assert.assertFalse(output.contains("lower_bound"));
+        Assert.assertEquals(
+                1,
+                new VerifyMetricsTool()
+                        .run(
+                                null,
+                                new PrintStream(new ByteArrayOutputStream()),
+                                new PrintStream(new ByteArrayOutputStream()),
+                                Arrays.asList(
+                                        RESOURCES.resolve("v1.metadata.json").toString(),
+                                        manifest.getAbsolutePath())));
+    }
+
+    @Test
+    public void testVerifyMetricsTimeUnits() throws Exception {
+        // both columns are timestamps in the table: id is written in millis, data as INT96
+        File dir = DIR.newFolder();
+        String metadata = new File(dir, "v1.metadata.json").getAbsolutePath();
+        Files.write(
+                Paths.get(metadata),
+                new String(
+                                Files.readAllBytes(RESOURCES.resolve("v1.metadata.json")),
+                                StandardCharsets.UTF_8)
+                        .replaceAll("\"type\" : \"(long|string)\"", "\"type\" : \"timestamp\"")
+                        .getBytes(StandardCharsets.UTF_8));
+        MessageType schema =
+                org.apache.parquet.schema.Types.buildMessage()
+                        .optional(PrimitiveTypeName.INT64)
+                        .as(
+                                LogicalTypeAnnotation.timestampType(
+                                        false, LogicalTypeAnnotation.TimeUnit.MILLIS))
+                        .id(1)
+                        .named("id")
+                        .optional(PrimitiveTypeName.INT96)
+                        .id(2)
+                        .named("data")
+                        .named("table");
+        File file = new File(dir, "millis.parquet");
+        try (ParquetWriter<Group> writer =
+                ExampleParquetWriter.builder(new org.apache.hadoop.fs.Path(file.getAbsolutePath()))
+                        .withType(schema)
+                        .build()) {
+            for (long millis : new long[] {1000, 2000}) {
+                writer.write(
+                        new SimpleGroupFactory(schema)
+                                .newGroup()
+                                .append("id", millis)
+                                .append("data", new NanoTime(2440588, millis * 1_000_000)));
+            }
+        }
+        File manifest = new File(dir, "manifest.avro");
+        copyManifest(
+                manifest,
+                (i, entry) -> {
+                    GenericRecord dataFile = (GenericRecord) entry.get("data_file");
+                    dataFile.put("file_path", file.getAbsolutePath());
+                    dataFile.put("file_size_in_bytes", file.length());
+                    dataFile.put("record_count", 2L);
+                    for (int id = 1; id <= 2; id++) {
+                        putMetric(dataFile, "value_counts", id, 2L);
+                        putMetric(dataFile, "lower_bounds", id, micros(1_000_000));
+                        putMetric(dataFile, "upper_bounds", id, micros(2_000_000));
+                    }
+                });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode =
+                new VerifyMetricsTool()
+                        .run(
+                                null,
+                                new PrintStream(out),
+                                new PrintStream(new ByteArrayOutputStream()),
+                                Arrays.asList(metadata, manifest.getAbsolutePath()));
+        Assert.assertEquals("", out.toString("UTF-8"));
+        Assert.assertEquals(0, exitCode);
+    }
+
+    private static ByteBuffer micros(long micros) {
+        return Conversions.toByteBuffer(Types.TimestampType.withoutZone(), micros);
+    }
+
+    /** Replaces the value of one key of a metrics map of a data file. */
+    private static void putMetric(GenericRecord dataFile, String name, int key, Object value) {
+        for (Object item : (Collection<?>) dataFile.get(name)) {
+            GenericRecord pair = (GenericRecord) item;
+            if (((Number) pair.get("key")).intValue() == key) {
+                pair.put("value", value);
+            }
+        }
+    }
+
+    @Test
+    public void testDeleteStats() throws Exception {
+        org.apache.iceberg.Schema schema =
+                new org.apache.iceberg.Schema(
+                        Types.NestedField.optional(1, "id", Types.LongType.get()),
+                        Types.NestedField.optional(2, "data", Types.StringType.get()));
+        PartitionSpec spec = PartitionSpec.builderFor(schema).identity("data").build();
+        File tableDir = DIR.newFolder();
+        List<ManifestFile> manifests = new ArrayList<>();
+
+        ManifestWriter<DataFile> dataWriter =
+                ManifestFiles.write(2, spec, localOutput(tableDir, "data.avro"), SNAPSHOT_ID);
+        try (ManifestWriter<DataFile> writer = dataWriter) {
+            writer.existing(dataFile(spec, "data=a", 100), SNAPSHOT_ID, 1L);
+            writer.existing(dataFile(spec, "data=a", 100), SNAPSHOT_ID, 3L);
+            writer.existing(dataFile(spec, "data=b", 40), SNAPSHOT_ID, 1L);
+        }
+        manifests.add(dataWriter.toManifestFile());
+
+        ManifestWriter<DeleteFile> deleteWriter =
+                ManifestFiles.writeDeleteManifest(
+                        2, spec, localOutput(tableDir, "deletes.avro"), SNAPSHOT_ID);
+        try (ManifestWriter<DeleteFile> writer = deleteWriter) {
+            // applies to the first file of a only, as the second has a higher sequence number
+            writer.existing(
+                    deleteFile(spec, "data=a", 10).ofPositionDeletes().build(), SNAPSHOT_ID, 2L);
+            // equality deletes skip data files of their own sequence number
+            writer.existing(
+                    deleteFile(spec, "data=a", 20).ofEqualityDeletes(1).build(), SNAPSHOT_ID, 3L);
+            writer.existing(
+                    deleteFile(spec, "data=b", 5).ofPositionDeletes().build(), SNAPSHOT_ID, 1L);
+        }
+        manifests.add(deleteWriter.toManifestFile());
+
+        // equality deletes of an unpartitioned spec apply to every partition
+        ManifestWriter<DeleteFile> globalWriter =
+                ManifestFiles.writeDeleteManifest(
+                        2,
+                        PartitionSpec.unpartitioned(),
+                        localOutput(tableDir, "global.avro"),
+                        SNAPSHOT_ID);
+        try (ManifestWriter<DeleteFile> writer = globalWriter) {
+            writer.existing(
+                    deleteFile(PartitionSpec.unpartitioned(), null, 7)
+                            .ofEqualityDeletes(1)
+                            .build(),
+                    SNAPSHOT_ID,
+                    2L);
+        }
+        manifests.add(globalWriter.toManifestFile());
+
+        Schema listSchema =
+                SchemaBuilder.record("manifest_file")
+                        .fields()
+                        .requiredString("manifest_path")
+                        .requiredLong("manifest_length")
+                        .requiredInt("partition_spec_id")
+                        .requiredInt("content")
+                        .requiredLong("sequence_number")
+                        .optionalLong("added_snapshot_id")
+                        .endRecord();
+        File manifestList = new File(tableDir, "snap-" + SNAPSHOT_ID + ".avro");
+        try (DataFileWriter<GenericRecord> writer =
+                new DataFileWriter<>(new GenericDatumWriter<>(listSchema))) {
+            writer.create(listSchema, manifestList);
+            for (int i = 0; i < manifests.size(); i++) {
+                GenericRecord record = new GenericData.Record(listSchema);
+                record.put("manifest_path", manifests.get(i).path());
+                record.put("manifest_length", manifests.get(i).length());
+                record.put("partition_spec_id", i == 2 ? 1 : 0);
+                record.put("content", manifests.get(i).content().id());
+                record.put("sequence_number", 3L);
+                record.put("added_snapshot_id", SNAPSHOT_ID);
+                writer.append(record);
+            }
+        }
+        String metadata = writeMetadata(tableDir, manifestList);
+
+        String[] lines = run(new DeleteStatsTool(), "--threads=2", metadata).split("\\R");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].startsWith("{\"partition\":\"data=a\",\"spec_id\":0,"));
+        Assert.assertTrue(
+                lines[0].contains(
+                        "\"data_files\":2,\"data_bytes\":200,\"position_delete_files\":1,"
+                                + "\"equality_delete_files\":1,\"delete_bytes\":30,"
+                                + "\"applied_deletes\":3,\"deletes_per_data_file\":1.5,"
+                                + "\"delete_bytes_read\":37,"));
+        Assert.assertTrue(
+                lines[1].contains("\"data=b\"") && lines[1].contains("\"applied_deletes\":2,"));
+
+        lines = run(new DeleteStatsTool(), "--order-by=ratio", "--limit=1", metadata).split("\\R");
+        Assert.assertEquals(1, lines.length);
+        Assert.assertTrue(lines[0].contains("\"delete_bytes_per_data_byte\":0.3"));
+    }
+
+    @Test
+    public void testHistoryScan() throws Exception {
+        // a second snapshot keeps the manifest of the first and adds a copy of it
+        String metadata = writeTable(2);
+        File tableDir = new File(metadata).getParentFile();
+        long childId = SNAPSHOT_ID + 1;
+        File firstList = new File(tableDir, "snap-" + SNAPSHOT_ID + ".avro");
+        File childList = new File(tableDir, "snap-" + childId + ".avro");
+        Files.move(firstList.toPath(), childList.toPath());
+        try (DataFileWriter<GenericRecord> writer =
+                new DataFileWriter<>(new GenericDatumWriter<>(MANIFEST_LIST_SCHEMA))) {
+            writer.create(MANIFEST_LIST_SCHEMA, firstList);
+            File manifest = new File(tableDir, "m0.avro");
+            GenericRecord record = new GenericData.Record(MANIFEST_LIST_SCHEMA);
+            record.put("manifest_path", manifest.getAbsolutePath());
+            record.put("manifest_length", manifest.length());
+            record.put("partition_spec_id", 0);
+            record.put("added_snapshot_id", SNAPSHOT_ID);
+            writer.append(record);
+        }
+        JsonObject root =
+                JsonParser.parseString(
+                                new String(
+                                        Files.readAllBytes(Paths.get(metadata)),
+                                        StandardCharsets.UTF_8))
+                        .getAsJsonObject();
+        JsonObject first = root.getAsJsonArray("snapshots").get(0).getAsJsonObject();
+        first.addProperty("manifest-list", firstList.getAbsolutePath());
+        JsonObject child = first.deepCopy();
+        child.addProperty("snapshot-id", childId);
+        child.addProperty("parent-snapshot-id", SNAPSHOT_ID);
+        child.addProperty("manifest-list", childList.getAbsolutePath());
+        root.getAsJsonArray("snapshots").add(child);
+        root.addProperty("current-snapshot-id", childId);
+        Files.write(Paths.get(metadata), new Gson().toJson(root).getBytes(StandardCharsets.UTF_8));
+
+        String[] lines = run(new HistoryScanTool(), "--threads=2", metadata).split("\\R");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(
+                lines[0].contains(
+                        "\"manifests\":1,\"decoded_manifests\":1,\"data_files\":2,"));
+        Assert.assertTrue(lines[0].contains("\"added_files\":2,"));
+        Assert.assertTrue(
+                lines[1].contains(
+                        "\"manifests\":2,\"decoded_manifests\":1,\"data_files\":4,"));
+        // the copied manifest still claims the first snapshot added its files
+        Assert.assertTrue(lines[1].contains("\"added_files\":0,"));
+        Assert.assertEquals("", run(new HistoryScanTool(), "--days=1", metadata));
+    }
+
+    private static OutputFile localOutput(File dir, String name) {
+        return org.apache.iceberg.Files.localOutput(new File(dir, name));
+    }
+
+    private static DataFile dataFile(PartitionSpec spec, String partition, long size) {
+        return DataFiles.builder(spec)
+                .withPath("/data/" + partition + "/" + size + ".parquet")
+                .withPartitionPath(partition)
+                .withFileSizeInBytes(size)
+                .withRecordCount(1)
+                .build();
+    }
+
+    private static FileMetadata.Builder deleteFile(
+            PartitionSpec spec, String partition, long size) {
+        FileMetadata.Builder builder =
+                FileMetadata.deleteFileBuilder(spec)
+                        .withPath("/deletes/" + partition + "/" + size + ".parquet")
+                        .withFileSizeInBytes(size)
+                        .withRecordCount(1);
+        return partition == null ? builder : builder.withPartitionPath(partition);
+    }
 }